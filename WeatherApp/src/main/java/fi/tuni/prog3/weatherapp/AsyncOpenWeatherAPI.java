@@ -0,0 +1,325 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking implementation of AsyncWeatherAPI on top of the OpenWeatherMap
+ * API. Requests are sent through the shared HttpTransport without blocking
+ * the caller and the responses are parsed into the weather models on a
+ * separate parse executor. The forecasts are parsed while their body is
+ * still streaming in, without building the whole response as a string.
+ * Identical requests made while one is still in flight share its result.
+ *
+ * The validators (ETag, Last-Modified) of every response are kept with its
+ * parsed model. Fetching the same address again sends a conditional request,
+ * and a 304 Not Modified answer reuses the model without parsing anything.
+ * The models kept are the decoded ones, which drop the raw response once
+ * decoded, and only as many are kept as the response cache holds.
+ *
+ * @author bpelmo
+ */
+public class AsyncOpenWeatherAPI implements AsyncWeatherAPI {
+
+    private final HttpTransport transport;
+    private final Executor parseExecutor;
+    private final GeocodingCache geocodingCache;
+    private final SingleFlight<String> inFlight = new SingleFlight<>();
+    private final TtlCache<String, Validated> validated =
+            new TtlCache<>(1, TimeUnit.DAYS, MAX_VALIDATED);
+
+    private static final int DEFAULT_PARSE_THREADS = 4;
+
+    // Models kept with validators; no more than the response cache keeps
+    private static final int MAX_VALIDATED =
+            CachingWeatherAPI.DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Builder. Constructs an API object that uses the shared transport and
+     * geocoding cache and parses responses on a small pool of its own.
+     * Streaming parsers block while the body arrives, so they are kept
+     * off the common fork-join pool.
+     */
+    public AsyncOpenWeatherAPI() {
+        this(HttpTransport.getShared(), newParseExecutor(),
+                GeocodingCache.getShared());
+    }
+
+    /**
+     * Builder. Constructs an API object from the given transport, parse
+     * executor and geocoding cache.
+     *
+     * @param transport transport used for all requests
+     * @param parseExecutor executor the responses are parsed on
+     * @param geocodingCache cache for location lookups
+     */
+    public AsyncOpenWeatherAPI(HttpTransport transport,
+            Executor parseExecutor, GeocodingCache geocodingCache) {
+        this.transport = transport;
+        this.parseExecutor = parseExecutor;
+        this.geocodingCache = geocodingCache;
+    }
+
+    @Override
+    public CompletableFuture<double[]> lookUpLocation(String loc) {
+        double[] cached = geocodingCache.get(loc);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(
+                    GeocodingCache.isUnknown(cached) ? null : cached);
+        }
+        return inFlight.execute("q=" + Management.formatSearch(loc),
+                () -> transport.getAsync(OpenWeatherAPI.locationUri(loc))
+                .thenApplyAsync(response -> OpenWeatherAPI.readCoordinates(
+                        geocodingCache, loc, response), parseExecutor));
+    }
+
+    @Override
+    public CompletableFuture<CurrentWeather> getCurrentWeather(
+            double[] coordinates) {
+        // Decoded here, so a malformed response fails the future and not
+        // the view reading the fields
+        return fetch(coordinates, OpenWeatherAPI.CURRENT_ENDPOINT, null,
+                CurrentWeather::new);
+    }
+
+    @Override
+    public CompletableFuture<Forecast> getDailyForecast(double[] coordinates) {
+        return fetchStream(coordinates, OpenWeatherAPI.DAILY_ENDPOINT,
+                OpenWeatherAPI.DAILY_COUNT, in -> new Forecast(
+                        new InputStreamReader(in, StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public CompletableFuture<HourlyForecast> getHourlyForecast(
+            double[] coordinates) {
+        // The response holds far more hours than are shown, so only the
+        // first ones are decoded before the forecast is handed over and
+        // the rest right after it
+        return fetchStream(coordinates, OpenWeatherAPI.HOURLY_ENDPOINT, null,
+                in -> new HourlyForecast(in.readAllBytes(),
+                        HourlyForecast.DEFAULT_WINDOW));
+    }
+
+    /**
+     * Gets the number of calls that were attached to a request already
+     * in flight instead of starting their own.
+     *
+     * @return number of coalesced calls
+     */
+    public long getCoalescedCount() {
+        return inFlight.getCoalescedCount();
+    }
+
+    /**
+     * Helper method to fetch an endpoint and parse the response.
+     *
+     * @param <T> type of the parsed model
+     * @param coordinates latitude and longitude
+     * @param endpoint endpoint path
+     * @param cnt number of entries to request or null for the default
+     * @param parser function creating the model from the response body
+     * @return future of the parsed model
+     */
+    private <T> CompletableFuture<T> fetch(double[] coordinates,
+            String endpoint, String cnt, Function<String, T> parser) {
+        URI uri = OpenWeatherAPI.weatherUri(coordinates[0], coordinates[1],
+                endpoint, cnt);
+        String key = uri.toString();
+        return inFlight.execute(key, () -> {
+            Validated previous = validated.get(key);
+            return transport.getAsync(uri, conditionalHeaders(previous))
+                    .thenApplyAsync(response -> {
+                        if (isNotModified(response, previous)) {
+                            return this.<T>reuse(previous);
+                        }
+                        T model = parser.apply(body(response));
+                        remember(key, response, model);
+                        return model;
+                    }, parseExecutor);
+        });
+    }
+
+    /**
+     * Parser reading a model from a stream of UTF-8 encoded JSON.
+     *
+     * @param <T> type of the parsed model
+     */
+    private interface StreamParser<T> {
+        T parse(InputStream in) throws IOException;
+    }
+
+    /**
+     * Helper method to fetch an endpoint and parse the response body while
+     * it is being received.
+     *
+     * @param <T> type of the parsed model
+     * @param coordinates latitude and longitude
+     * @param endpoint endpoint path
+     * @param cnt number of entries to request or null for the default
+     * @param parser parser reading the model from the response body
+     * @return future of the parsed model
+     */
+    private <T> CompletableFuture<T> fetchStream(double[] coordinates,
+            String endpoint, String cnt, StreamParser<T> parser) {
+        URI uri = OpenWeatherAPI.weatherUri(coordinates[0], coordinates[1],
+                endpoint, cnt);
+        String key = uri.toString();
+        return inFlight.execute(key, () -> {
+            Validated previous = validated.get(key);
+            return transport.getStreamAsync(uri, conditionalHeaders(previous))
+                    .thenApplyAsync(response -> {
+                try (InputStream in = response.body()) {
+                    if (isNotModified(response, previous)) {
+                        return this.<T>reuse(previous);
+                    }
+                    if (response.statusCode() != 200) {
+                        throw new WeatherApiException(response.statusCode());
+                    }
+                    T model = parser.parse(in);
+                    remember(key, response, model);
+                    return model;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, parseExecutor);
+        });
+    }
+
+    /**
+     * A parsed model together with the validators of the response it was
+     * parsed from.
+     */
+    private static class Validated {
+        private final String etag;
+        private final String lastModified;
+        private final Object model;
+
+        private Validated(String etag, String lastModified, Object model) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.model = model;
+        }
+    }
+
+    /**
+     * Helper method to build the headers of a conditional request.
+     *
+     * @param previous the earlier response, or null
+     * @return If-None-Match and If-Modified-Since headers, if known
+     */
+    private static Map<String, String> conditionalHeaders(Validated previous) {
+        if (previous == null) {
+            return Map.of();
+        }
+        Map<String, String> headers = new HashMap<>();
+        if (previous.etag != null) {
+            headers.put("If-None-Match", previous.etag);
+        }
+        if (previous.lastModified != null) {
+            headers.put("If-Modified-Since", previous.lastModified);
+        }
+        return headers;
+    }
+
+    /**
+     * Helper method to check whether the earlier model can be reused.
+     *
+     * @param response the response
+     * @param previous the earlier response, or null
+     * @return true if the server answered 304 Not Modified
+     */
+    private static boolean isNotModified(HttpResponse<?> response,
+            Validated previous) {
+        return response.statusCode() == 304 && previous != null;
+    }
+
+    /**
+     * Helper method to get the model of an earlier response.
+     *
+     * @param <T> type of the model
+     * @param previous the earlier response
+     * @return the model
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T reuse(Validated previous) {
+        return (T) previous.model;
+    }
+
+    /**
+     * Helper method to store the validators of a response with its model.
+     * Responses without validators are not stored. Of a windowed hourly
+     * forecast only the window has been decoded for showing it; the rest
+     * is decoded right after on the parse executor, so no cache keeps the
+     * raw body alive, and the forecast is stored only once it is decoded.
+     *
+     * @param key the request address
+     * @param response the response
+     * @param model the model parsed from the response
+     */
+    private void remember(String key, HttpResponse<?> response, Object model) {
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String lastModified = response.headers().firstValue("Last-Modified")
+                .orElse(null);
+        Validated entry = etag != null || lastModified != null
+                ? new Validated(etag, lastModified, model) : null;
+        if (model instanceof HourlyForecast
+                && !((HourlyForecast) model).isFullyDecoded()) {
+            HourlyForecast hourly = (HourlyForecast) model;
+            CompletableFuture.runAsync(hourly::decodeAll, parseExecutor)
+                    .whenComplete((ignored, error) -> {
+                if (error != null) {
+                    Logger.getLogger(AsyncOpenWeatherAPI.class.getName())
+                            .log(Level.WARNING, "Could not decode " + key,
+                                    error);
+                } else if (entry != null) {
+                    validated.put(key, entry);
+                }
+            });
+        } else if (entry != null) {
+            validated.put(key, entry);
+        }
+    }
+
+    /**
+     * Helper method to create the default parse executor.
+     *
+     * @return executor with a few daemon threads
+     */
+    static Executor newParseExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(DEFAULT_PARSE_THREADS, runnable -> {
+            Thread thread = new Thread(runnable,
+                    "weather-parser-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Helper method to check the status of a response.
+     *
+     * @param response the response
+     * @return body of the response
+     */
+    private static String body(HttpResponse<String> response) {
+        if (response.statusCode() != 200) {
+            throw new WeatherApiException(response.statusCode());
+        }
+        return response.body();
+    }
+}
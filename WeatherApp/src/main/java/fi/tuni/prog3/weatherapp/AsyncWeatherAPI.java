@@ -0,0 +1,42 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterpart of iAPI. Instead of raw strings the methods
+ * return futures of the parsed weather models, so several requests can be
+ * in flight at the same time and parsing does not block the caller.
+ */
+public interface AsyncWeatherAPI {
+
+    /**
+     * Returns coordinates for a location.
+     * @param loc Name of the location for which coordinates should be fetched.
+     * @return future of the coordinates, completing with null if the
+     * location is unknown.
+     */
+    public CompletableFuture<double[]> lookUpLocation(String loc);
+
+    /**
+     * Returns the current weather for the given coordinates.
+     * @param coordinates latitude and longitude
+     * @return future of the current weather
+     */
+    public CompletableFuture<CurrentWeather> getCurrentWeather(
+            double[] coordinates);
+
+    /**
+     * Returns the daily forecast for the given coordinates.
+     * @param coordinates latitude and longitude
+     * @return future of the daily forecast
+     */
+    public CompletableFuture<Forecast> getDailyForecast(double[] coordinates);
+
+    /**
+     * Returns the hourly forecast for the given coordinates.
+     * @param coordinates latitude and longitude
+     * @return future of the hourly forecast
+     */
+    public CompletableFuture<HourlyForecast> getHourlyForecast(
+            double[] coordinates);
+}
@@ -0,0 +1,148 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caching layer in front of another AsyncWeatherAPI. Parsed weather models
+ * are kept in memory per endpoint, keyed by the coordinates rounded to a
+ * grid, so searching the same city again, switching between history entries
+ * or reloading the map is served without a request. Every endpoint has its
+ * own time to live and the caches are bounded in size.
+ * 
+ * @author bpelmo
+ */
+public class CachingWeatherAPI implements AsyncWeatherAPI {
+    
+    // Default grid size in degrees, roughly one kilometre
+    private static final double DEFAULT_GRID = 0.01;
+    
+    static final int DEFAULT_MAX_ENTRIES = 128;
+    
+    private final AsyncWeatherAPI delegate;
+    private final double grid;
+    private final TtlCache<String, CurrentWeather> currentCache;
+    private final TtlCache<String, Forecast> dailyCache;
+    private final TtlCache<String, HourlyForecast> hourlyCache;
+    
+    /**
+     * Builder. Constructs a cache with the default grid, 10 minute time to
+     * live for the current weather, 30 minutes for the hourly forecast and
+     * one hour for the daily forecast.
+     * 
+     * @param delegate API used on cache misses
+     */
+    public CachingWeatherAPI(AsyncWeatherAPI delegate) {
+        this(delegate, DEFAULT_GRID, 10, 60, 30, TimeUnit.MINUTES,
+                DEFAULT_MAX_ENTRIES);
+    }
+    
+    /**
+     * Builder. Constructs a cache with the given settings.
+     * 
+     * @param delegate API used on cache misses
+     * @param grid grid size in degrees the coordinates are rounded to
+     * @param currentTtl time to live of the current weather
+     * @param dailyTtl time to live of the daily forecast
+     * @param hourlyTtl time to live of the hourly forecast
+     * @param unit unit of the times to live
+     * @param maxEntries maximum number of entries per endpoint
+     */
+    public CachingWeatherAPI(AsyncWeatherAPI delegate, double grid,
+            long currentTtl, long dailyTtl, long hourlyTtl, TimeUnit unit,
+            int maxEntries) {
+        this.delegate = delegate;
+        this.grid = grid;
+        this.currentCache = new TtlCache<>(currentTtl, unit, maxEntries);
+        this.dailyCache = new TtlCache<>(dailyTtl, unit, maxEntries);
+        this.hourlyCache = new TtlCache<>(hourlyTtl, unit, maxEntries);
+    }
+
+    @Override
+    public CompletableFuture<double[]> lookUpLocation(String loc) {
+        return delegate.lookUpLocation(loc);
+    }
+
+    @Override
+    public CompletableFuture<CurrentWeather> getCurrentWeather(
+            double[] coordinates) {
+        String key = key(OpenWeatherAPI.CURRENT_ENDPOINT, coordinates);
+        CurrentWeather cached = currentCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return delegate.getCurrentWeather(coordinates).thenApply(value -> {
+            currentCache.put(key, value);
+            return value;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Forecast> getDailyForecast(double[] coordinates) {
+        String key = key(OpenWeatherAPI.DAILY_ENDPOINT, coordinates);
+        Forecast cached = dailyCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return delegate.getDailyForecast(coordinates).thenApply(value -> {
+            dailyCache.put(key, value);
+            return value;
+        });
+    }
+
+    @Override
+    public CompletableFuture<HourlyForecast> getHourlyForecast(
+            double[] coordinates) {
+        String key = key(OpenWeatherAPI.HOURLY_ENDPOINT, coordinates);
+        HourlyForecast cached = hourlyCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return delegate.getHourlyForecast(coordinates).thenApply(value -> {
+            hourlyCache.put(key, value);
+            return value;
+        });
+    }
+    
+    /**
+     * Gets the number of requests served from the caches.
+     * 
+     * @return hit count over all endpoints
+     */
+    public long getHitCount() {
+        return currentCache.getHitCount() + dailyCache.getHitCount()
+                + hourlyCache.getHitCount();
+    }
+    
+    /**
+     * Gets the number of requests passed on to the delegate.
+     * 
+     * @return miss count over all endpoints
+     */
+    public long getMissCount() {
+        return currentCache.getMissCount() + dailyCache.getMissCount()
+                + hourlyCache.getMissCount();
+    }
+    
+    /**
+     * Removes all cached responses.
+     */
+    public void clear() {
+        currentCache.clear();
+        dailyCache.clear();
+        hourlyCache.clear();
+    }
+    
+    /**
+     * Helper method to build a cache key from the endpoint and the
+     * coordinates rounded to the grid.
+     * 
+     * @param endpoint endpoint path
+     * @param coordinates latitude and longitude
+     * @return cache key
+     */
+    private String key(String endpoint, double[] coordinates) {
+        return endpoint + ":" + Math.round(coordinates[0] / grid)
+                + ":" + Math.round(coordinates[1] / grid);
+    }
+}
@@ -0,0 +1,108 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker protecting the weather API. After a number of consecutive
+ * failures the circuit opens and requests fail fast without being sent.
+ * Once the open period has passed a single trial request is let through:
+ * if it succeeds the circuit closes again, otherwise it stays open for
+ * another period. A trial request that ends without an outcome, e.g.
+ * because it was interrupted, must be given back by its owner, or no
+ * further trial would ever be let through.
+ * 
+ * @author bpelmo
+ */
+public class CircuitBreaker {
+    
+    /**
+     * Answer of allowRequest: the request must not be sent, may be sent
+     * through the closed circuit, or is the single trial of an open one.
+     */
+    public enum Permit {
+        DENIED,
+        ALLOWED,
+        TRIAL
+    }
+    
+    private final int failureThreshold;
+    private final long openNanos;
+    private int failures;
+    private boolean open;
+    private boolean trialInFlight;
+    private long openedAt;
+    
+    /**
+     * Builder. Constructs a closed circuit breaker.
+     * 
+     * @param failureThreshold consecutive failures that open the circuit
+     * @param openTime how long the circuit stays open
+     * @param unit unit of the open time
+     */
+    public CircuitBreaker(int failureThreshold, long openTime, TimeUnit unit) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openTime);
+    }
+    
+    /**
+     * Checks whether a request may be sent. A caller given TRIAL owns the
+     * trial until it records the outcome or gives the trial back.
+     * 
+     * @return ALLOWED if the circuit is closed, TRIAL if the request is
+     * the trial of an open circuit, otherwise DENIED
+     */
+    public synchronized Permit allowRequest() {
+        if (!open) {
+            return Permit.ALLOWED;
+        }
+        if (!trialInFlight && System.nanoTime() - openedAt >= openNanos) {
+            trialInFlight = true;
+            return Permit.TRIAL;
+        }
+        return Permit.DENIED;
+    }
+    
+    /**
+     * Records a successful request, closing the circuit.
+     */
+    public synchronized void recordSuccess() {
+        failures = 0;
+        open = false;
+        trialInFlight = false;
+    }
+    
+    /**
+     * Records a failed request, opening the circuit if the threshold is
+     * reached or the trial request failed.
+     */
+    public synchronized void recordFailure() {
+        failures++;
+        if (trialInFlight || failures >= failureThreshold) {
+            open = true;
+            trialInFlight = false;
+            openedAt = System.nanoTime();
+        }
+    }
+    
+    /**
+     * Records a request that was admitted but ended before it had an
+     * outcome. If it owned the trial, the trial is given back and the next
+     * request may be the trial instead; other requests change nothing.
+     * 
+     * @param permit the permit the request was given
+     */
+    public synchronized void recordAbandoned(Permit permit) {
+        if (permit == Permit.TRIAL) {
+            trialInFlight = false;
+        }
+    }
+    
+    /**
+     * Checks whether the circuit is open.
+     * 
+     * @return true if requests are currently failing fast
+     */
+    public synchronized boolean isOpen() {
+        return open;
+    }
+}
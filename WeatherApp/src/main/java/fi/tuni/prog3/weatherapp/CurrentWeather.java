@@ -1,57 +1,95 @@
 package fi.tuni.prog3.weatherapp;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import org.json.JSONObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
 
 /**
- * This class models the current weather conditions based on data provided in 
- * JSON format. It parses the JSON to extract weather-related attributes such 
- * as temperature, humidity, and wind details. 
+ * This class models the current weather conditions based on data provided in
+ * JSON format. It parses the JSON to extract weather-related attributes such
+ * as temperature, humidity, and wind details.
+ * 
+ * The JSON is decoded by the constructor in a single pass that reads only
+ * the wanted fields and skips the rest, so malformed JSON is noticed on the
+ * thread that parses the response. A missing field reads as zero.
  * 
  * ChatGPT 4 was used in writing, debugging and commenting this class.
  * 
  * @author bpelmo
  */
 public class CurrentWeather {
-    private String description;
-    private double temperatureK;
-    private double feelsLikeK;
-    private int humidity;
-    private double windSpeed;
-    private int windDirection;
-    private long sunrise;
-    private long sunset;
-    private long timezoneOffset;
+    private final short conditionCode;
+    private final double temperatureK;
+    private final double feelsLikeK;
+    private final int humidity;
+    private final double windSpeed;
+    private final int windDirection;
+    private final long sunrise;
+    private final long sunset;
+    private final ZoneOffset offset;
     
     /**
-     * Constructor that parses a JSON string to initialize the weather conditions.
+     * Constructor that decodes the weather conditions from a JSON string.
      * 
      * @param json A string containing the JSON data about current weather.
+     * @throws JsonParseException if the JSON is malformed
      */
     public CurrentWeather(String json) {
-        
-        JSONObject currentWeatherJson = new JSONObject(json);
-        
-        // Parsing the Json data
-        this.description = currentWeatherJson.getJSONArray("weather")
-                .getJSONObject(0).getString("description");
-        this.temperatureK = currentWeatherJson.getJSONObject("main")
-                .getDouble("temp");
-        this.feelsLikeK = currentWeatherJson.getJSONObject("main")
-                .getDouble("feels_like");
-        this.humidity = currentWeatherJson.getJSONObject("main")
-                .getInt("humidity");
-        this.windSpeed = currentWeatherJson.getJSONObject("wind")
-                .getDouble("speed");
-        this.windDirection = currentWeatherJson.getJSONObject("wind")
-                .getInt("deg");
-        this.sunrise = currentWeatherJson.getJSONObject("sys")
-                .getLong("sunrise");
-        this.sunset = currentWeatherJson.getJSONObject("sys")
-                .getLong("sunset");
-        this.timezoneOffset = currentWeatherJson
-                .getLong("timezone");
+        this(json.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Constructor that decodes the weather conditions from UTF-8 encoded
+     * JSON.
+     * 
+     * @param json UTF-8 encoded JSON data about current weather.
+     * @throws JsonParseException if the JSON is malformed
+     */
+    public CurrentWeather(byte[] json) {
+        this(decode(json));
+    }
+    
+    /**
+     * Constructor for already decoded weather conditions, e.g. read from
+     * a snapshot.
+     * 
+     * @param conditionCode weather condition code
+     * @param temperatureK temperature in Kelvin
+     * @param feelsLikeK "feels like" temperature in Kelvin
+     * @param humidity humidity in percent
+     * @param windSpeed wind speed in metres per second
+     * @param windDirection wind direction in degrees
+     * @param sunrise time of sunrise in epoch seconds
+     * @param sunset time of sunset in epoch seconds
+     * @param zoneOffset UTC offset of the location
+     */
+    CurrentWeather(int conditionCode, double temperatureK, double feelsLikeK,
+            int humidity, double windSpeed, int windDirection, long sunrise,
+            long sunset, ZoneOffset zoneOffset) {
+        this.conditionCode = (short) conditionCode;
+        this.temperatureK = temperatureK;
+        this.feelsLikeK = feelsLikeK;
+        this.humidity = humidity;
+        this.windSpeed = windSpeed;
+        this.windDirection = windDirection;
+        this.sunrise = sunrise;
+        this.sunset = sunset;
+        this.offset = zoneOffset;
+    }
+    
+    /**
+     * Constructor for the values of a decoding pass.
+     * 
+     * @param decoded the values
+     */
+    private CurrentWeather(Fields decoded) {
+        this(decoded.conditionCode, decoded.temperatureK, decoded.feelsLikeK,
+                decoded.humidity, decoded.windSpeed, decoded.windDirection,
+                decoded.sunrise, decoded.sunset, decoded.offset);
     }
     
     /**
@@ -60,7 +98,34 @@ public class CurrentWeather {
      * @return description
      */
     public String getDescription() {
-        return description;
+        return WeatherCondition.getDescription(getConditionCode());
+    }
+    
+    /**
+     * Gets the weather condition code.
+     * 
+     * @return condition code
+     */
+    public int getConditionCode() {
+        return conditionCode;
+    }
+    
+    /**
+     * Gets the temperature in Kelvin.
+     * 
+     * @return temperature
+     */
+    public double getTemperatureK() {
+        return temperatureK;
+    }
+    
+    /**
+     * Gets the "feels like" temperature in Kelvin.
+     * 
+     * @return temperature
+     */
+    public double getFeelsLikeK() {
+        return feelsLikeK;
     }
     
     /**
@@ -69,8 +134,7 @@ public class CurrentWeather {
      * @return temperature
      */
     public String getTemperatureC() {
-        double temperatureC= temperatureK - 273.15;
-        return String.format("%.0f°C",(double) Math.round(temperatureC));
+        return Units.Temperature.CELSIUS.formatWithSymbol(getTemperatureK());
     }
     
     /**
@@ -79,8 +143,7 @@ public class CurrentWeather {
      * @return temperature
      */
     public String getFeelsLikeC() {
-        double feelsLikeC= feelsLikeK - 273.15;
-        return String.format("%.0f°C",(double) Math.round(feelsLikeC));
+        return Units.Temperature.CELSIUS.formatWithSymbol(getFeelsLikeK());
     }
     
     /**
@@ -89,16 +152,34 @@ public class CurrentWeather {
      * @return humidity
      */
     public String getHumidity() {
-        return String.format("%d", humidity);
+        return Integer.toString(humidity);
     }
     
     /**
-     * Gets wind speed.
+     * Gets the humidity in percent.
+     * 
+     * @return humidity
+     */
+    public int getHumidityPercent() {
+        return humidity;
+    }
+    
+    /**
+     * Gets wind speed in metres per second.
+     * 
+     * @return wind speed
+     */
+    public double getWindSpeedMps() {
+        return windSpeed;
+    }
+    
+    /**
+     * Gets wind speed in metres per second, rounded.
      * 
      * @return wind speed
      */
     public String getWindSpeed() {
-        return String.format("%.0f", (double) Math.round(windSpeed));
+        return Units.Speed.METERS_PER_SECOND.format(getWindSpeedMps());
     }
     
     /**
@@ -107,7 +188,16 @@ public class CurrentWeather {
      * @return direction of wind
      */
     public String getWindDirection() {
-        return String.format("%d", windDirection);
+        return Integer.toString(windDirection);
+    }
+    
+    /**
+     * Gets the wind direction in degrees.
+     * 
+     * @return direction of wind
+     */
+    public int getWindDirectionDegrees() {
+        return windDirection;
     }
     
     /**
@@ -116,7 +206,7 @@ public class CurrentWeather {
      * @return time of sunrise
      */
     public String getSunrise() {
-        return formatTime(sunrise, timezoneOffset);
+        return TimeFormats.format(sunrise, offset, TimeFormats.TIME);
     }
     
     /**
@@ -125,28 +215,156 @@ public class CurrentWeather {
      * @return time of sunset
      */
     public String getSunset() {
-        return formatTime(sunset, timezoneOffset);
+        return TimeFormats.format(sunset, offset, TimeFormats.TIME);
     }
     
     /**
-     * Helper method to format the given timestamp into a time string adjusted
-     * for the timezone.
+     * Gets the time of sunrise in seconds since the Unix epoch.
      * 
-     * @param timestamp Time in seconds since Unix epoch.
-     * @param timeZoneOffset Offset in seconds from UTC.
-     * @return Formatted time string
+     * @return time of sunrise
      */
-    private String formatTime(long timestamp, long timeZoneOffset) {
-        SimpleDateFormat timeFormat = new SimpleDateFormat("HHmm");
-
-        int totalSecondsOffset = (int) timeZoneOffset;
-        int hours = totalSecondsOffset / 3600;
-        int minutes = (Math.abs(totalSecondsOffset) % 3600) / 60;
-
-        String timeZoneId = String.format("GMT%+d:%02d", hours, minutes);
-        timeFormat.setTimeZone(java.util.TimeZone.getTimeZone(timeZoneId));
-
-        String formattedTime = timeFormat.format(new Date(timestamp * 1000));
-        return formattedTime;
+    public long getSunriseEpochSecond() {
+        return sunrise;
+    }
+    
+    /**
+     * Gets the time of sunset in seconds since the Unix epoch.
+     * 
+     * @return time of sunset
+     */
+    public long getSunsetEpochSecond() {
+        return sunset;
+    }
+    
+    /**
+     * Gets the UTC offset of the location.
+     * 
+     * @return offset
+     */
+    public ZoneOffset getZoneOffset() {
+        return offset;
+    }
+    
+    /**
+     * Values collected by the decoding pass: the condition code from the "weather" array,
+     * temperatures and humidity from "main", speed and direction from
+     * "wind", sunrise and sunset from "sys" and the UTC offset.
+     */
+    private static final class Fields {
+        private short conditionCode = WeatherCondition.UNKNOWN;
+        private double temperatureK;
+        private double feelsLikeK;
+        private int humidity;
+        private double windSpeed;
+        private int windDirection;
+        private long sunrise;
+        private long sunset;
+        private ZoneOffset offset = ZoneOffset.UTC;
+    }
+    
+    /**
+     * Reader of the fields of a JSON object.
+     */
+    private interface FieldReader {
+    
+        /**
+         * Reads the value of a field if it is wanted.
+         * 
+         * @param name name of the field
+         * @param reader reader positioned at the value
+         * @return true if the value was read, false if it should be skipped
+         * @throws IOException if the JSON is malformed
+         */
+        boolean read(String name, JsonReader reader) throws IOException;
+    }
+    
+    /**
+     * Helper method to decode the wanted fields of the JSON in one pass.
+     * 
+     * @param json UTF-8 encoded JSON
+     * @return the values
+     * @throws JsonParseException if the JSON is malformed
+     */
+    private static Fields decode(byte[] json) {
+        Fields decoded = new Fields();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(json), StandardCharsets.UTF_8))) {
+            readObject(reader, (name, value) -> {
+                switch (name) {
+                    case "weather":
+                        decoded.conditionCode =
+                                JsonStreams.readConditionCode(value);
+                        return true;
+                    case "main":
+                        readObject(value, (field, main) -> {
+                            switch (field) {
+                                case "temp":
+                                    decoded.temperatureK = main.nextDouble();
+                                    return true;
+                                case "feels_like":
+                                    decoded.feelsLikeK = main.nextDouble();
+                                    return true;
+                                case "humidity":
+                                    decoded.humidity = main.nextInt();
+                                    return true;
+                                default:
+                                    return false;
+                            }
+                        });
+                        return true;
+                    case "wind":
+                        readObject(value, (field, wind) -> {
+                            if ("speed".equals(field)) {
+                                decoded.windSpeed = wind.nextDouble();
+                                return true;
+                            } else if ("deg".equals(field)) {
+                                decoded.windDirection = wind.nextInt();
+                                return true;
+                            }
+                            return false;
+                        });
+                        return true;
+                    case "sys":
+                        readObject(value, (field, sys) -> {
+                            if ("sunrise".equals(field)) {
+                                decoded.sunrise = sys.nextLong();
+                                return true;
+                            } else if ("sunset".equals(field)) {
+                                decoded.sunset = sys.nextLong();
+                                return true;
+                            }
+                            return false;
+                        });
+                        return true;
+                    case "timezone":
+                        decoded.offset = ZoneOffset.ofTotalSeconds(
+                                value.nextInt());
+                        return true;
+                    default:
+                        return false;
+                }
+            });
+        } catch (IOException e) {
+            throw new JsonParseException(e);
+        }
+        return decoded;
+    }
+    
+    /**
+     * Helper method to walk through an object, skipping unwanted fields.
+     * 
+     * @param reader reader positioned at the object
+     * @param fields reader of the wanted fields
+     * @throws IOException if the JSON is malformed
+     */
+    private static void readObject(JsonReader reader, FieldReader fields)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!fields.read(reader.nextName(), reader)) {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,61 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.awt.image.BufferedImage;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Background;
+
+/**
+ * UiContext of the application, backed by an icon cache and a theme.
+ * Every resource is decoded once and shared by all views.
+ *
+ * @author bpelmo
+ */
+public class DefaultUiContext implements UiContext {
+
+    private static final String DEFAULT_IMAGE_PATH = "/images/default.png";
+
+    private static final int DEFAULT_IMAGE_SIZE = 50;
+
+    private final IconCache iconCache;
+    private final Theme theme;
+
+    /**
+     * Builder. Constructs a context using the shared icon cache and theme.
+     */
+    public DefaultUiContext() {
+        this(IconCache.getShared(), Theme.getShared());
+    }
+
+    /**
+     * Builder. Constructs a context using the given icon cache and theme.
+     *
+     * @param iconCache cache the icons are read from
+     * @param theme theme the background is read from
+     */
+    public DefaultUiContext(IconCache iconCache, Theme theme) {
+        this.iconCache = iconCache;
+        this.theme = theme;
+    }
+
+    @Override
+    public Image getIcon(String path, int size) {
+        return iconCache.get(path, size);
+    }
+
+    @Override
+    public BufferedImage getBufferedIcon(String path, int size) {
+        return iconCache.getBuffered(path, size);
+    }
+
+    @Override
+    public ImageView getDefaultImage() {
+        return new ImageView(iconCache.get(DEFAULT_IMAGE_PATH,
+                DEFAULT_IMAGE_SIZE));
+    }
+
+    @Override
+    public Background getBackground() {
+        return theme.getBackground();
+    }
+}
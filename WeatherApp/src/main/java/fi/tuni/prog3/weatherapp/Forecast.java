@@ -1,172 +1,377 @@
 package fi.tuni.prog3.weatherapp;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-import java.util.ArrayList;
-import java.util.Date;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Class Forecast represents a collection of weather forecast entries.
  * Each entry contains details such as date, weather description, minimum
- * and maximum temperatures. 
- * 
+ * and maximum temperatures. Dates are the local dates of the location.
+ *
+ * The entries are stored column by column in parallel primitive arrays,
+ * one array per field. ForecastEntry objects are lightweight views over
+ * one index of those arrays and are created only when asked for.
+ *
  * ChatGPT 4 was used in writing, debugging and commenting this code.
- * 
+ *
  * @author bpelmo
  */
 public class Forecast implements Iterable<Forecast.ForecastEntry> {
-    private List<ForecastEntry> entries;
-    
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private ZoneOffset zoneOffset = ZoneOffset.UTC;
+    private long[] times = new long[INITIAL_CAPACITY];
+    // Temperatures are kept in Kelvin, as received
+    private double[] minTemps = new double[INITIAL_CAPACITY];
+    private double[] maxTemps = new double[INITIAL_CAPACITY];
+    private double[] rains = new double[INITIAL_CAPACITY];
+    private short[] conditionCodes = new short[INITIAL_CAPACITY];
+
     /**
-     * Inner class ForecastEntry which represents a single entry in the
-     * list of forecast entries.
+     * Class ForecastEntry which represents a single entry in the
+     * list of forecast entries. It is a view over one index of the
+     * forecast's arrays and holds no data of its own.
      */
-    public class ForecastEntry {
-        private Date date;
-        private String description;
-        private double minTemp;
-        private double maxTemp;
-        private double rain;
+    public static final class ForecastEntry {
+        private final Forecast forecast;
+        private final int index;
 
         /**
-         * Builder. Constructs a ForecastEntry object from the parameters.
-         * 
-         * @param date
-         * @param description
-         * @param minTemp
-         * @param maxTemp 
+         * Builder. Constructs a view of the entry at the given index.
+         *
+         * @param forecast the forecast holding the data
+         * @param index index of the entry
          */
-        public ForecastEntry(Date date, String description,
-                            double minTemp, double maxTemp) {
-            
-            this.date = date;
-            this.description = description;
-            this.minTemp = minTemp;
-            this.maxTemp = maxTemp;
+        private ForecastEntry(Forecast forecast, int index) {
+            this.forecast = forecast;
+            this.index = index;
         }
-        
 
         /**
          * Gets the amount of rain of the entry.
-         * 
+         *
          * @return rain amount
          */
         public double getRain() {
-            return rain;
+            return forecast.rains[index];
         }
-        
+
         /**
-         * Gets the date of the entry.
-         * 
+         * Gets the time of the entry in seconds since the Unix epoch.
+         *
+         * @return time
+         */
+        public long getEpochSecond() {
+            return forecast.times[index];
+        }
+
+        /**
+         * Gets the date of the entry in the local time of the location.
+         *
          * @return date
          */
-        public Date getDate() {
-            return date;
+        public LocalDate getDate() {
+            return TimeFormats.toLocalDate(forecast.times[index],
+                    forecast.zoneOffset);
         }
-        
+
         /**
          * Gets the weather description for the entry.
-         * 
+         *
          * @return description
          */
         public String getDescription() {
-            return description;
+            return WeatherCondition.getDescription(
+                    forecast.conditionCodes[index]);
+        }
+
+        /**
+         * Gets the weather condition code for the entry.
+         *
+         * @return condition code
+         */
+        public int getConditionCode() {
+            return forecast.conditionCodes[index];
+        }
+
+        /**
+         * Gets the minimum temperature for the entry in Kelvin.
+         *
+         * @return temperature minimum
+         */
+        public double getMinTempK() {
+            return forecast.minTemps[index];
         }
 
         /**
-         * Gets the minimum temperature for the entry.
-         * 
+         * Gets the maximum temperature for the entry in Kelvin.
+         *
+         * @return temperature maximum
+         */
+        public double getMaxTempK() {
+            return forecast.maxTemps[index];
+        }
+
+        /**
+         * Checks whether another entry holds the same values, e.g. the
+         * same day of an earlier forecast.
+         *
+         * @param other the other entry
+         * @return true if the time, temperatures, rain and condition
+         * are equal
+         */
+        public boolean sameAs(ForecastEntry other) {
+            Forecast a = forecast;
+            Forecast b = other.forecast;
+            int j = other.index;
+            return a.times[index] == b.times[j]
+                    && a.zoneOffset.equals(b.zoneOffset)
+                    && a.minTemps[index] == b.minTemps[j]
+                    && a.maxTemps[index] == b.maxTemps[j]
+                    && a.rains[index] == b.rains[j]
+                    && a.conditionCodes[index] == b.conditionCodes[j];
+        }
+
+        /**
+         * Gets the minimum temperature for the entry in Celsius.
+         *
          * @return temperature minimum
          */
         public String getMinTemp() {
-            return String.format("%.0f",(double) Math.round(minTemp));
+            return Units.Temperature.CELSIUS.format(forecast.minTemps[index]);
         }
 
         /**
-         * Gets the maximum temperature for the entry.
-         * 
+         * Gets the maximum temperature for the entry in Celsius.
+         *
          * @return temperature maximum
          */
         public String getMaxTemp() {
-            return String.format("%.0f",(double) Math.round(maxTemp));
+            return Units.Temperature.CELSIUS.format(forecast.maxTemps[index]);
         }
     }
 
     /**
-     * Builder. Constructs a Forecast object from the json 
+     * Builder. Constructs a Forecast object from the json
      * fetched from the API.
-     * 
-     * @param json 
+     *
+     * @param json
      */
     public Forecast(String json) {
-        entries = new ArrayList<>();
-        parse(json);
+        try {
+            parse(new JsonReader(new StringReader(json)));
+        } catch (IOException e) {
+            throw new JsonParseException(e);
+        }
     }
 
     /**
-     * Parses the data from the json string.
-     * 
-     * @param json 
+     * Builder. Constructs a Forecast object by streaming the json
+     * directly from the reader, e.g. from the body of an HTTP response.
+     *
+     * @param reader reader of the json
+     * @throws IOException if reading fails or the json is malformed
      */
-    private void parse(String json) {
-        JSONObject root = new JSONObject(json);
-        JSONArray list = root.getJSONArray("list");
-
-        for (int i = 0; i < list.length(); i++) {
-            JSONObject item = list.getJSONObject(i);
-            long timestamp = item.getLong("dt") * 1000L;
-            Date date = new Date(timestamp);
-
-            double rain = 0.0; 
-            if (item.has("rain")) {
-                Object rainObj = item.get("rain");
-                if (rainObj instanceof JSONObject) {
-                    rain = ((JSONObject) rainObj).optDouble("3h", 0.0);
-                } else if (rainObj instanceof Number) {
-                    rain = ((Number) rainObj).doubleValue();
-                }
-            }
+    public Forecast(Reader reader) throws IOException {
+        parse(new JsonReader(reader));
+    }
 
-            JSONObject temp = item.getJSONObject("temp");
-            double minTemp = temp.getDouble("min") - 273.15; 
-            double maxTemp = temp.getDouble("max") - 273.15;
+    /**
+     * Builder. Constructs a Forecast object from already decoded columns,
+     * e.g. read from a snapshot. The arrays are not copied.
+     *
+     * @param zoneOffset UTC offset of the location
+     * @param times times of the entries in epoch seconds
+     * @param minTemps minimum temperatures in Kelvin
+     * @param maxTemps maximum temperatures in Kelvin
+     * @param rains amounts of rain
+     * @param conditionCodes weather condition codes
+     */
+    Forecast(ZoneOffset zoneOffset, long[] times, double[] minTemps,
+            double[] maxTemps, double[] rains, short[] conditionCodes) {
+        this.size = times.length;
+        this.zoneOffset = zoneOffset;
+        this.times = times;
+        this.minTemps = minTemps;
+        this.maxTemps = maxTemps;
+        this.rains = rains;
+        this.conditionCodes = conditionCodes;
+    }
 
-            String description = item.getJSONArray("weather").getJSONObject(0)
-                    .getString("description");
+    /**
+     * Parses the data from the json stream. Only the fields kept by the
+     * entries and the UTC offset of the city are decoded, everything else
+     * is skipped.
+     *
+     * @param reader
+     */
+    private void parse(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "list":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        parseEntry(reader);
+                    }
+                    reader.endArray();
+                    break;
+                case "city":
+                    zoneOffset = JsonStreams.readCityOffset(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (size < times.length) {
+            resize(size);
+        }
+    }
 
-            ForecastEntry entry = new ForecastEntry(date, description,
-                    minTemp, maxTemp);
-            entry.rain = rain; 
-            entries.add(entry);
+    /**
+     * Parses a single element of the "list" array and appends it to
+     * the arrays.
+     *
+     * @param reader reader positioned at the element
+     */
+    private void parseEntry(JsonReader reader) throws IOException {
+        if (size == times.length) {
+            resize(size * 2);
         }
+        int i = size;
+        rains[i] = 0.0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "dt":
+                    times[i] = reader.nextLong();
+                    break;
+                case "temp":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if ("min".equals(name)) {
+                            minTemps[i] = reader.nextDouble();
+                        } else if ("max".equals(name)) {
+                            maxTemps[i] = reader.nextDouble();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "rain":
+                    rains[i] = JsonStreams.readRain(reader, "3h");
+                    break;
+                case "weather":
+                    conditionCodes[i] = JsonStreams.readConditionCode(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        size++;
+    }
+
+    /**
+     * Helper method to change the capacity of the arrays.
+     *
+     * @param capacity new capacity
+     */
+    private void resize(int capacity) {
+        times = Arrays.copyOf(times, capacity);
+        minTemps = Arrays.copyOf(minTemps, capacity);
+        maxTemps = Arrays.copyOf(maxTemps, capacity);
+        rains = Arrays.copyOf(rains, capacity);
+        conditionCodes = Arrays.copyOf(conditionCodes, capacity);
     }
 
     /**
-     * Gets the list of forecast entries.
-     * 
-     * @return 
+     * Gets the UTC offset of the location.
+     *
+     * @return offset
+     */
+    public ZoneOffset getZoneOffset() {
+        return zoneOffset;
+    }
+
+    /**
+     * Gets the number of forecast entries.
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the list of forecast entries. The list is a read-only view
+     * whose elements are created on access.
+     *
+     * @return
      */
     public List<ForecastEntry> getAllEntries() {
-        return entries;
+        return new AbstractList<ForecastEntry>() {
+            @Override
+            public ForecastEntry get(int index) {
+                return getNthEntry(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
     }
-    
+
     /**
      * Provides an iterator over the forecast entries.
      */
     @Override
     public Iterator<ForecastEntry> iterator() {
-        return entries.iterator();
+        return new Iterator<ForecastEntry>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public ForecastEntry next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return new ForecastEntry(Forecast.this, next++);
+            }
+        };
     }
-    
+
     /**
      * Gets the Nth forecast entry from all entries.
-     * 
+     *
      * @param n
      * @return forecast entry with index n
      */
     public Forecast.ForecastEntry getNthEntry(int n) {
-        return entries.get(n);
+        if (n < 0 || n >= size) {
+            throw new IndexOutOfBoundsException("Index: " + n
+                    + ", Size: " + size);
+        }
+        return new ForecastEntry(this, n);
     }
 }
@@ -2,14 +2,9 @@
 package fi.tuni.prog3.weatherapp;
 
 
-import java.io.IOException;
-import java.io.InputStream;
+import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.layout.VBox;
-import java.time.format.DateTimeFormatter;
-import java.util.Locale;
-import java.time.LocalDate;
-import java.time.ZoneId;
 import javafx.geometry.Pos;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -23,25 +18,31 @@ import javafx.scene.image.ImageView;
  * ChatGPT 3.5 was used in coding, debugging and testing this class
  * @author jaani
  */
-public class ForecastBox {
+public class ForecastBox
+        implements ForecastStrip.EntryView<Forecast.ForecastEntry> {
     private final VBox forecastPanel;
     private final Label dateLabel;
     private final Label descriptionLabel;
     private final Label tempLabel;
     private final Label rainLabel;
-    private WeatherApp weatherApp;
+    private final UiContext uiContext;
+    // Size of the weather icon in pixels
+    static final int ICON_SIZE = 75;
+    // Icon slot currently shown, -1 before the first update
+    private int iconSlot = -1;
 
     /**
      * Constructs a ForecastBox object
      * Initializes the VBox and labels, configures their styles and positions
+     * @param uiContext shared resources of the views
      */
-    public ForecastBox() {
+    public ForecastBox(UiContext uiContext) {
         forecastPanel = new VBox();
         dateLabel = new Label();
         descriptionLabel = new Label();
         tempLabel = new Label();
         rainLabel = new Label();
-        weatherApp = new WeatherApp();
+        this.uiContext = uiContext;
 
 
         configureForecastPanel();
@@ -54,26 +55,19 @@ public class ForecastBox {
         setLabelStyles();
     }
     /**
-     * Finds an image fitting to the description and returns it
-     * if no image name matches returns default image.
-     * @param description The description of the weather condition
+     * Finds the image of the weather condition from the shared icons
+     * and returns it if the image cannot be read returns default image.
+     * @param conditionCode The code of the weather condition
      * @return An ImageView displaying the weather image
      */
-        private ImageView getWeatherImage(String description) {
-            String imagePath = "/images/" + description.toLowerCase() + ".png";
-            try (InputStream imageStream = getClass()
-                    .getResourceAsStream(imagePath)) {
-                if (imageStream != null) {
-                    Image image = new Image(imageStream);
-                    ImageView imageView = new ImageView(image);
-                    imageView.setFitWidth(75);
-                    imageView.setFitHeight(75);
-                    return imageView;
-                } else {
-                    return weatherApp.getDefaultImage();
-                }
-            } catch (IOException e) {
-                return weatherApp.getDefaultImage();
+        private ImageView getWeatherImage(int conditionCode) {
+            String imagePath = WeatherCondition.getIconPath(
+                    WeatherCondition.getIconSlot(conditionCode));
+            Image image = uiContext.getIcon(imagePath, ICON_SIZE);
+            if (image != null) {
+                return new ImageView(image);
+            } else {
+                return uiContext.getDefaultImage();
             }
         }
     
@@ -114,20 +108,25 @@ public class ForecastBox {
 
     /**
      * Sets the forecast data to the labels with the
-     * provided forecast entry data
+     * provided forecast entry data. The icon is only reloaded if the
+     * weather condition has changed
      * @param entry The forecast entry containing date, weather description,
      * temperature and rainfall information
+     * @param unit The unit the temperatures are shown in
      */
-    public void updateForecastLabel(Forecast.ForecastEntry entry) {
-        LocalDate date = entry.getDate().toInstant()
-                .atZone(ZoneId.systemDefault()).toLocalDate();
-        DateTimeFormatter formatter = DateTimeFormatter
-                .ofPattern("E d.M", Locale.ENGLISH);
-        String formattedDate = date.format(formatter);
-        dateLabel.setText(formattedDate);
-        descriptionLabel.setGraphic(getWeatherImage(entry.getDescription()));
-        tempLabel.setText(entry.getMinTemp() + "°C..." 
-                + entry.getMaxTemp()+ "°C");
+    public void updateForecastLabel(Forecast.ForecastEntry entry,
+            Units.Temperature unit) {
+        dateLabel.setText(TimeFormats.get(TimeFormats.DAY)
+                .format(entry.getDate()));
+        int newIconSlot = WeatherCondition.getIconSlot(
+                entry.getConditionCode());
+        if (newIconSlot != iconSlot) {
+            descriptionLabel.setGraphic(
+                    getWeatherImage(entry.getConditionCode()));
+            iconSlot = newIconSlot;
+        }
+        tempLabel.setText(unit.formatWithSymbol(entry.getMinTempK()) + "..."
+                + unit.formatWithSymbol(entry.getMaxTempK()));
         rainLabel.setText("Rain: " + entry.getRain() + "ml");
         
     }
@@ -139,4 +138,21 @@ public class ForecastBox {
     public VBox getForecastPanel() {
         return forecastPanel;
     }
+    /**
+     * Gets the forecast panel for showing it in a forecast strip
+     * @return The VBox containing the forecast information
+     */
+    @Override
+    public Node getNode() {
+        return forecastPanel;
+    }
+    /**
+     * Shows a forecast entry in a forecast strip
+     * @param entry The forecast entry to show
+     * @param unit The unit the temperatures are shown in
+     */
+    @Override
+    public void show(Forecast.ForecastEntry entry, Units.Temperature unit) {
+        updateForecastLabel(entry, unit);
+    }
 }
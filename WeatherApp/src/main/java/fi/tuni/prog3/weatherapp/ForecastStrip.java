@@ -0,0 +1,153 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+
+/**
+ * Horizontal strip of forecast entries. The strip is a virtualized
+ * ListView: only the cells that fit in view exist, and when the strip is
+ * scrolled the cells leaving the view are reused for the entries coming
+ * into it. The number of nodes therefore stays the same whether the
+ * forecast has ten entries or a hundred.
+ *
+ * Every cell wraps one box built by the given factory. A cell keeps the
+ * entry it shows and updates its box only when it is given an entry with
+ * other values or the unit has changed.
+ *
+ * A handler can be told when the strip is scrolled close to its last
+ * entry, e.g. to make more entries available before they are reached.
+ *
+ * @param <T> type of the entries
+ *
+ * @author bpelmo
+ */
+public class ForecastStrip<T> {
+
+    // Cells from the last entry at which the strip counts as near its end
+    private static final int NEAR_END_CELLS = 4;
+
+    /**
+     * A box showing one entry in a cell of the strip.
+     *
+     * @param <T> type of the entries
+     */
+    public interface EntryView<T> {
+
+        /**
+         * Gets the node of the box.
+         *
+         * @return the node
+         */
+        Node getNode();
+
+        /**
+         * Shows an entry in the box.
+         *
+         * @param entry the entry
+         * @param unit unit the temperatures are shown in
+         */
+        void show(T entry, Units.Temperature unit);
+    }
+
+    private final ListView<T> listView = new ListView<>();
+    private final ObservableList<T> entries =
+            FXCollections.observableArrayList();
+    private final Supplier<? extends EntryView<T>> viewFactory;
+    private final BiPredicate<T, T> sameEntry;
+    private Units.Temperature unit = Units.Temperature.CELSIUS;
+    private Runnable onNearEnd;
+
+    /**
+     * Builder. Constructs an empty strip.
+     *
+     * @param viewFactory creates the box of a new cell
+     * @param sameEntry checks whether two entries hold the same values
+     * @param cellWidth width of a cell in pixels
+     * @param height height of the strip in pixels
+     */
+    public ForecastStrip(Supplier<? extends EntryView<T>> viewFactory,
+            BiPredicate<T, T> sameEntry, double cellWidth, double height) {
+        this.viewFactory = viewFactory;
+        this.sameEntry = sameEntry;
+        listView.setItems(entries);
+        listView.setOrientation(Orientation.HORIZONTAL);
+        listView.setFixedCellSize(cellWidth);
+        listView.setPrefHeight(height);
+        listView.setMinHeight(height);
+        listView.setStyle("-fx-background-color: transparent;");
+        listView.setCellFactory(list -> new EntryCell());
+    }
+
+    /**
+     * Shows the given entries. Only the visible cells are updated, and of
+     * them only the ones whose entry has changed, unless the unit has.
+     *
+     * @param newEntries the entries to show
+     * @param newUnit unit the temperatures are shown in
+     */
+    public void setEntries(List<T> newEntries, Units.Temperature newUnit) {
+        unit = newUnit;
+        entries.setAll(newEntries);
+    }
+
+    /**
+     * Sets the handler called when a cell close to the last entry is
+     * shown. It is called on the FX thread, possibly several times while
+     * the end is in view.
+     *
+     * @param handler the handler, or null for none
+     */
+    public void setOnNearEnd(Runnable handler) {
+        onNearEnd = handler;
+    }
+
+    /**
+     * Gets the node of the strip for adding it to a layout.
+     *
+     * @return the list view
+     */
+    public ListView<T> getNode() {
+        return listView;
+    }
+
+    /**
+     * Cell reusing one box for whichever entry it is given.
+     */
+    private final class EntryCell extends ListCell<T> {
+        private final EntryView<T> view = viewFactory.get();
+        private T shownEntry;
+        private Units.Temperature shownUnit;
+
+        private EntryCell() {
+            setStyle("-fx-background-color: transparent; -fx-padding: 0;");
+        }
+
+        @Override
+        protected void updateItem(T entry, boolean empty) {
+            super.updateItem(entry, empty);
+            if (empty || entry == null) {
+                setGraphic(null);
+                shownEntry = null;
+                return;
+            }
+            if (shownEntry == null || shownUnit != unit
+                    || !sameEntry.test(entry, shownEntry)) {
+                view.show(entry, unit);
+                shownUnit = unit;
+            }
+            shownEntry = entry;
+            setGraphic(view.getNode());
+            if (onNearEnd != null
+                    && getIndex() >= entries.size() - NEAR_END_CELLS) {
+                onNearEnd.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches the coordinates of location names so that a known location is
+ * only ever looked up over the network once. Entries are kept in memory and
+ * appended to a text file, which is read once when the cache is created.
+ * Names that the API does not know are cached too, but only for a limited
+ * time. A file holding replaced or expired lines is rewritten compacted
+ * when it is read, so it does not grow without bound.
+ * 
+ * Names are normalized with Management.formatSearch, so "oulu" and " OULU "
+ * share the same entry.
+ * 
+ * @author bpelmo
+ */
+public class GeocodingCache {
+    
+    // File path for storing the cached coordinates
+    private static final String DEFAULT_FILE_PATH = "geocoding_cache.txt";
+    
+    // How long an unknown location is remembered
+    private static final long UNKNOWN_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    
+    private static final String SEPARATOR = "\t";
+    
+    private static final double[] UNKNOWN_LOCATION = new double[0];
+    
+    private static GeocodingCache shared;
+    
+    private final String filePath;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    
+    /**
+     * A cached lookup result. Coordinates are null for an unknown location.
+     */
+    private static class Entry {
+        private final double[] coordinates;
+        private final long expires;
+
+        private Entry(double[] coordinates, long expires) {
+            this.coordinates = coordinates;
+            this.expires = expires;
+        }
+    }
+    
+    /**
+     * Builder. Constructs a cache persisted in the given file and reads
+     * the entries stored in it.
+     * 
+     * @param filePath path of the cache file
+     */
+    public GeocodingCache(String filePath) {
+        this.filePath = filePath;
+        load();
+    }
+    
+    /**
+     * Gets the application wide cache, persisted in the default file.
+     * 
+     * @return shared cache
+     */
+    public static synchronized GeocodingCache getShared() {
+        if (shared == null) {
+            shared = new GeocodingCache(DEFAULT_FILE_PATH);
+        }
+        return shared;
+    }
+    
+    /**
+     * Gets the cached coordinates of a location.
+     * 
+     * @param location the location name
+     * @return the coordinates, an empty array if the location is known to be
+     * unknown, or null if the location is not cached.
+     */
+    public double[] get(String location) {
+        Entry entry = entries.get(Management.formatSearch(location));
+        if (entry == null) {
+            return null;
+        }
+        if (entry.coordinates == null) {
+            if (entry.expires < System.currentTimeMillis()) {
+                return null;
+            }
+            return UNKNOWN_LOCATION;
+        }
+        return entry.coordinates;
+    }
+    
+    /**
+     * Checks if cached coordinates mean that the location is unknown.
+     * 
+     * @param coordinates the value returned by get
+     * @return true if the location is unknown
+     */
+    public static boolean isUnknown(double[] coordinates) {
+        return coordinates != null && coordinates.length == 0;
+    }
+    
+    /**
+     * Stores the coordinates of a location.
+     * 
+     * @param location the location name
+     * @param coordinates latitude and longitude, or null if the location
+     * is unknown
+     */
+    public void put(String location, double[] coordinates) {
+        String key = Management.formatSearch(location);
+        Entry entry = coordinates != null
+                ? new Entry(coordinates.clone(), Long.MAX_VALUE)
+                : new Entry(null,
+                        System.currentTimeMillis() + UNKNOWN_TTL_MILLIS);
+        entries.put(key, entry);
+        append(key, entry);
+    }
+    
+    /**
+     * Helper method to read the cache file, compacting it if it holds more
+     * lines than entries.
+     */
+    private void load() {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new
+         FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                String[] parts = line.split(SEPARATOR);
+                if (parts.length != 3) {
+                    continue;
+                }
+                try {
+                    if (parts[1].isEmpty()) {
+                        long expires = Long.parseLong(parts[2]);
+                        if (expires > now) {
+                            entries.put(parts[0], new Entry(null, expires));
+                        }
+                    } else {
+                        entries.put(parts[0], new Entry(new double[]{
+                            Double.parseDouble(parts[1]),
+                            Double.parseDouble(parts[2])}, Long.MAX_VALUE));
+                    }
+                } catch (NumberFormatException e) {
+                    // Skip corrupted lines
+                }
+            }
+        } catch (IOException e) {
+            Logger.getLogger(GeocodingCache.class.getName()).log(
+                    Level.WARNING, "Could not read " + filePath, e);
+            return;
+        }
+        if (lines > entries.size()) {
+            compact();
+        }
+    }
+    
+    /**
+     * Helper method to replace the cache file with one line per entry.
+     * The file is written next to the old one first and then moved over
+     * it, so a failed write leaves the old file in place.
+     */
+    private void compact() {
+        Path path = Paths.get(filePath).toAbsolutePath();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            // Same charset as the FileReader and FileWriter use
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary,
+                    Charset.defaultCharset())) {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writer.write(line(entry.getKey(), entry.getValue()));
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Logger.getLogger(GeocodingCache.class.getName()).log(
+                    Level.WARNING, "Could not compact " + filePath, e);
+        }
+    }
+    
+    /**
+     * Helper method to append an entry to the cache file. Later lines
+     * override earlier ones when the file is read back.
+     * 
+     * @param key the normalized location name
+     * @param entry the entry to write
+     */
+    private synchronized void append(String key, Entry entry) {
+        try (BufferedWriter writer = new BufferedWriter(new 
+        FileWriter(filePath, true))) {
+            writer.write(line(key, entry));
+        } catch (IOException e) {
+            Logger.getLogger(GeocodingCache.class.getName()).log(
+                    Level.WARNING, "Could not write " + filePath, e);
+        }
+    }
+    
+    /**
+     * Helper method to format an entry as a line of the cache file.
+     * 
+     * @param key the normalized location name
+     * @param entry the entry
+     * @return the line, ending with a newline
+     */
+    private static String line(String key, Entry entry) {
+        if (entry.coordinates != null) {
+            return key + SEPARATOR + entry.coordinates[0]
+                    + SEPARATOR + entry.coordinates[1] + "\n";
+        }
+        return key + SEPARATOR + SEPARATOR + entry.expires + "\n";
+    }
+}
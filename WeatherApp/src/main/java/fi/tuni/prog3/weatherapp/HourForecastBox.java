@@ -1,8 +1,7 @@
 package fi.tuni.prog3.weatherapp;
 
-import java.io.IOException;
-import java.io.InputStream;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -16,24 +15,30 @@ import javafx.scene.layout.VBox;
  * ChatGPT 3.5 was used in coding, debugging and testing this class
  * @author jaani
  */
-public class HourForecastBox {
+public class HourForecastBox implements
+        ForecastStrip.EntryView<HourlyForecast.HourlyForecastEntry> {
     private final VBox hourlyForecastBox;
     private final Label hourLabel;
     private final Label descriptionLabel;
     private final Label temperature;
     private final Label rainLabel;
-    private WeatherApp weatherApp;
+    private final UiContext uiContext;
+    // Size of the weather icon in pixels
+    static final int ICON_SIZE = 50;
+    // Icon slot currently shown, -1 before the first update
+    private int iconSlot = -1;
     
     /**
      * Constructs a HourForecastBox object.
      * Initializes the VBox and labels, configures their styles
+     * @param uiContext shared resources of the views
      */
-    public HourForecastBox() {
+    public HourForecastBox(UiContext uiContext) {
         hourlyForecastBox = new VBox();
         hourLabel = new Label();
         descriptionLabel = new Label();
         temperature = new Label();
-        weatherApp = new WeatherApp();
+        this.uiContext = uiContext;
         rainLabel = new Label();
         
         configureHourForecastBox();
@@ -48,29 +53,22 @@ public class HourForecastBox {
     private void configureHourForecastBox() {
         hourlyForecastBox.setMinWidth(50);
         hourlyForecastBox.setMinHeight(130);
-        hourlyForecastBox.setBackground(weatherApp.createBackgroundFromImage());
+        hourlyForecastBox.setBackground(uiContext.getBackground());
     }
     /**
-     * Finds an image fitting to the description and returns it
-     * if no image name matches returns default image.
-     * @param description The description of the weather condition
+     * Finds the image of the weather condition from the shared icons
+     * and returns it if the image cannot be read returns default image.
+     * @param conditionCode The code of the weather condition
      * @return An ImageView displaying the weather image.
      */
-    private ImageView getWeatherImage(String description) {
-        String imagePath = "/images/" + description.toLowerCase() + ".png";
-        try (InputStream imageStream = getClass()
-                .getResourceAsStream(imagePath)) {
-            if (imageStream != null) {
-                Image image = new Image(imageStream);
-                ImageView imageView = new ImageView(image);
-                imageView.setFitWidth(50);
-                imageView.setFitHeight(50);
-                return imageView;
-            } else {
-                return weatherApp.getDefaultImage();
-            }
-        } catch (IOException e) {
-            return weatherApp.getDefaultImage();
+    private ImageView getWeatherImage(int conditionCode) {
+        String imagePath = WeatherCondition.getIconPath(
+                WeatherCondition.getIconSlot(conditionCode));
+        Image image = uiContext.getIcon(imagePath, ICON_SIZE);
+        if (image != null) {
+            return new ImageView(image);
+        } else {
+            return uiContext.getDefaultImage();
         }
 }
     /**
@@ -89,15 +87,23 @@ public class HourForecastBox {
     }
     /**
      * Updates the hourly forecast labels with the provided hourly 
-     * forecast entry data
+     * forecast entry data. The icon is only reloaded if the weather
+     * condition has changed
      * @param entry The hourly forecast entry containing hour, description, 
      * temperature and rainfall information
+     * @param unit The unit the temperature is shown in
      */
         public void updateHourlyForecastLabel(HourlyForecast
-                .HourlyForecastEntry entry) {
+                .HourlyForecastEntry entry, Units.Temperature unit) {
         hourLabel.setText(entry.getHour());
-        descriptionLabel.setGraphic(getWeatherImage(entry.getDescription()));
-        temperature.setText(entry.getTemperature() + "°C");
+        int newIconSlot = WeatherCondition.getIconSlot(
+                entry.getConditionCode());
+        if (newIconSlot != iconSlot) {
+            descriptionLabel.setGraphic(
+                    getWeatherImage(entry.getConditionCode()));
+            iconSlot = newIconSlot;
+        }
+        temperature.setText(unit.formatWithSymbol(entry.getTemperatureK()));
         rainLabel.setText(entry.getRain() + "ml");
     }
     
@@ -108,4 +114,24 @@ public class HourForecastBox {
     public VBox getHourForecastBox() {
         return hourlyForecastBox;
     }
+    
+    /**
+     * Gets the hourly forecast box for showing it in a forecast strip
+     * @return The VBox containing the hourly forecast information
+     */
+    @Override
+    public Node getNode() {
+        return hourlyForecastBox;
+    }
+    
+    /**
+     * Shows an hourly forecast entry in a forecast strip
+     * @param entry The hourly forecast entry to show
+     * @param unit The unit the temperature is shown in
+     */
+    @Override
+    public void show(HourlyForecast.HourlyForecastEntry entry,
+            Units.Temperature unit) {
+        updateHourlyForecastLabel(entry, unit);
+    }
 }
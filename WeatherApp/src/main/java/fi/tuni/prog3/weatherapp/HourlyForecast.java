@@ -1,120 +1,534 @@
 package fi.tuni.prog3.weatherapp;
 
-import java.util.ArrayList;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import java.util.NoSuchElementException;
 
 /**
- * Represents a hourly forecast, containing a list of hourly forecast entries
+ * Represents a hourly forecast, containing a list of hourly forecast entries.
+ * The entries are stored in parallel primitive arrays, one per field, and
+ * HourlyForecastEntry objects are lightweight views over one index.
+ * Hours are the local hours of the location
+ *
+ * A forecast created from the raw bytes of a response can be windowed: only
+ * the first entries are decoded right away and the reader is paused after
+ * them. The rest are decoded, continuing from where the reader stopped,
+ * by decodeAll or the first time an entry after the window is asked for,
+ * which also releases the raw response. getDecodedSize
+ * and isFullyDecoded never decode anything and hasEntry only decodes when
+ * asked for an entry after the window
  * @author jaani
  */
 public class HourlyForecast implements Iterable<HourlyForecast.
         HourlyForecastEntry> {
-    private List<HourlyForecastEntry> entries;
+    /**
+     * Number of entries decoded right away by default, the hours shown
+     * in the view
+     */
+    public static final int DEFAULT_WINDOW = 24;
+
+    private static final int INITIAL_CAPACITY = 32;
+    private static final String[] HOURS = new String[24];
+    private static final byte[] CITY_KEY =
+            "\"city\"".getBytes(StandardCharsets.UTF_8);
+
+    static {
+        for (int hour = 0; hour < HOURS.length; hour++) {
+            HOURS[hour] = String.format("%02d", hour);
+        }
+    }
+
+    private volatile ZoneOffset zoneOffset = ZoneOffset.UTC;
+    private volatile Columns columns;
+    // Reader of a windowed forecast paused in the list after the window,
+    // null once everything is decoded
+    private volatile JsonReader pending;
 
     /**
      * Represents a single hourly forecast entry, containing information about
-     * the hour, description, temperature and rainfall
-     */
-    public class HourlyForecastEntry {
-        private String hour;
-        private String description;
-        private double temperature;
-        private double rain;
-        
+     * the hour, description, temperature and rainfall. The entry is a view
+     * over one index of the forecast's arrays
+     */
+    public static final class HourlyForecastEntry {
+        private final HourlyForecast forecast;
+        private final int index;
+
         /**
-         * Creates a new hourly forecast entry.
-         * @param hour the hour of the forecast (in 24-hour format)
-         * @param description a brief description of the weather
-         * @param temperature the temperature in degrees Celsius
-         * @param rain the amount of rainfall
+         * Creates a view of the entry at the given index
+         * @param forecast the forecast holding the data
+         * @param index index of the entry
          */
-        public HourlyForecastEntry(String hour, String description, double
-                temperature, double rain) {
-            this.hour = hour;
-            this.description = description;
-            this.temperature = temperature;
-            this.rain = rain;
-        }
-        
+        private HourlyForecastEntry(HourlyForecast forecast, int index) {
+            this.forecast = forecast;
+            this.index = index;
+        }
+
         /**
-         * Returns the hour of the forecast
+         * Returns the time of the forecast in seconds since the Unix epoch
+         * @return the time
+         */
+        public long getEpochSecond() {
+            return forecast.columns.times[index];
+        }
+        /**
+         * Returns the hour of the forecast in the local time of the location
          * @return the hour (in 24-hour format)
          */
         public String getHour() {
-            return hour;
+            return HOURS[TimeFormats.hourOfDay(forecast.columns.times[index],
+                    forecast.zoneOffset)];
         }
         /**
          * Returns the rainfall information in mm
          * @return the amount of rainfall
          */
         public double getRain() {
-            return rain;
+            return forecast.columns.rains[index];
         }
         /**
-         * Returns the description of the weather condition, round to the 
+         * Returns the description of the weather condition, round to the
          * nearest integer
          * @return the description
          */
         public String getDescription() {
-            return description;
+            return WeatherCondition.getDescription(
+                    forecast.columns.conditionCodes[index]);
+        }
+        /**
+         * Returns the weather condition code
+         * @return the condition code
+         */
+        public int getConditionCode() {
+            return forecast.columns.conditionCodes[index];
+        }
+        /**
+         * Checks whether another entry holds the same values, e.g. the
+         * same hour of an earlier forecast
+         * @param other the other entry
+         * @return true if the time, temperature, rain and condition
+         * are equal
+         */
+        public boolean sameAs(HourlyForecastEntry other) {
+            Columns a = forecast.columns;
+            Columns b = other.forecast.columns;
+            int j = other.index;
+            return a.times[index] == b.times[j]
+                    && forecast.zoneOffset.equals(other.forecast.zoneOffset)
+                    && a.temperatures[index] == b.temperatures[j]
+                    && a.rains[index] == b.rains[j]
+                    && a.conditionCodes[index] == b.conditionCodes[j];
         }
         /**
-         * Returns the temperature in degrees celsius
+         * Returns the temperature in Kelvin
+         * @return the temperature
+         */
+        public double getTemperatureK() {
+            return forecast.columns.temperatures[index];
+        }
+        /**
+         * Returns the temperature in degrees celsius, rounded to the
+         * nearest integer
          * @return the temperature
          */
         public String getTemperature() {
-            return String.format("%.0f",(double) Math.round(temperature));
+            return Units.Temperature.CELSIUS.format(
+                    forecast.columns.temperatures[index]);
         }
     }
+
+    /**
+     * The decoded entries. A new Columns object is published whenever more
+     * entries are decoded, an existing one is never changed afterwards
+     */
+    private static final class Columns {
+        private int size;
+        private long[] times;
+        // Temperatures are kept in Kelvin, as received
+        private double[] temperatures;
+        private double[] rains;
+        private short[] conditionCodes;
+
+        /**
+         * Creates empty columns with the given capacity
+         * @param capacity the initial capacity
+         */
+        private Columns(int capacity) {
+            times = new long[capacity];
+            temperatures = new double[capacity];
+            rains = new double[capacity];
+            conditionCodes = new short[capacity];
+        }
+
+        /**
+         * Parses a single element of the "list" array and appends it to
+         * the arrays
+         * @param reader a JSON reader positioned at the element
+         */
+        private void parseEntry(JsonReader reader) throws IOException {
+            if (size == times.length) {
+                resize(Math.max(size * 2, INITIAL_CAPACITY));
+            }
+            int i = size;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "dt":
+                        times[i] = reader.nextLong();
+                        break;
+                    case "main":
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if ("temp".equals(reader.nextName())) {
+                                temperatures[i] = reader.nextDouble();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        break;
+                    case "rain":
+                        rains[i] = JsonStreams.readRain(reader, "1h");
+                        break;
+                    case "weather":
+                        conditionCodes[i] = JsonStreams.readConditionCode(
+                                reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            size++;
+        }
+
+        /**
+         * Creates a copy of the columns for decoding more entries into
+         * @return the copy
+         */
+        private Columns copy() {
+            Columns copy = new Columns(0);
+            copy.size = size;
+            copy.times = times;
+            copy.temperatures = temperatures;
+            copy.rains = rains;
+            copy.conditionCodes = conditionCodes;
+            copy.resize(Math.max(size * 2, INITIAL_CAPACITY));
+            return copy;
+        }
+
+        /**
+         * Changes the capacity of the entry arrays
+         * @param capacity the new capacity
+         */
+        private void resize(int capacity) {
+            times = Arrays.copyOf(times, capacity);
+            temperatures = Arrays.copyOf(temperatures, capacity);
+            rains = Arrays.copyOf(rains, capacity);
+            conditionCodes = Arrays.copyOf(conditionCodes, capacity);
+        }
+    }
+
     /**
      * Creates a new HourlyForecast object from the JSON string.
-     * Initializes the list of forecast entries and parses the JSON data
+     * Parses the JSON data into the entry arrays
      * @param json a JSON string containing hourly forecast data
      */
     public HourlyForecast(String json) {
-        entries = new ArrayList<>();
-        parse(json);
+        try {
+            parse(new JsonReader(new StringReader(json)), Integer.MAX_VALUE);
+        } catch (IOException e) {
+            throw new JsonParseException(e);
+        }
+    }
+    /**
+     * Creates a new HourlyForecast object by streaming the JSON directly
+     * from the reader, e.g. from the body of an HTTP response
+     * @param reader a reader of the hourly forecast JSON
+     * @throws IOException if reading fails or the JSON is malformed
+     */
+    public HourlyForecast(Reader reader) throws IOException {
+        parse(new JsonReader(reader), Integer.MAX_VALUE);
+    }
+    /**
+     * Creates a windowed HourlyForecast object from UTF-8 encoded JSON.
+     * Only the first entries are decoded now, the array is read for the
+     * rest later and must not be changed afterwards
+     * @param json UTF-8 encoded JSON containing hourly forecast data
+     * @param window number of entries to decode right away
+     * @throws IOException if the JSON is malformed
+     */
+    public HourlyForecast(byte[] json, int window) throws IOException {
+        JsonReader reader = jsonReader(json);
+        if (!parse(reader, window)) {
+            if (zoneOffset == null) {
+                zoneOffset = findCityOffset(json);
+            }
+            pending = reader;
+        }
+    }
+    /**
+     * Creates a new HourlyForecast object from already decoded columns,
+     * e.g. read from a snapshot. The arrays are not copied
+     * @param zoneOffset UTC offset of the location
+     * @param times times of the entries in epoch seconds
+     * @param temperatures temperatures in Kelvin
+     * @param rains amounts of rain
+     * @param conditionCodes weather condition codes
+     */
+    HourlyForecast(ZoneOffset zoneOffset, long[] times,
+            double[] temperatures, double[] rains, short[] conditionCodes) {
+        Columns decoded = new Columns(0);
+        decoded.size = times.length;
+        decoded.times = times;
+        decoded.temperatures = temperatures;
+        decoded.rains = rains;
+        decoded.conditionCodes = conditionCodes;
+        this.zoneOffset = zoneOffset;
+        this.columns = decoded;
+    }
+    /**
+     * Parses the JSON stream to exctract hourly forecast data.
+     * Fills the entry arrays with parsed data and reads the UTC offset of
+     * the city, skipping the fields the entries do not keep. Stops after
+     * the given number of entries, leaving the reader in the list and the
+     * offset null if the city comes after the list
+     * @param reader a JSON reader positioned at the root object
+     * @param limit maximum number of entries to decode
+     * @return true if all entries were decoded
+     */
+    private boolean parse(JsonReader reader, int limit) throws IOException {
+        Columns decoded = new Columns(Math.min(limit, INITIAL_CAPACITY));
+        boolean complete = true;
+        boolean cityFound = false;
+        reader.beginObject();
+        document:
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "list":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (decoded.size == limit) {
+                            complete = false;
+                            break document;
+                        }
+                        decoded.parseEntry(reader);
+                    }
+                    reader.endArray();
+                    break;
+                case "city":
+                    zoneOffset = JsonStreams.readCityOffset(reader);
+                    cityFound = true;
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        if (complete) {
+            reader.endObject();
+        } else if (!cityFound) {
+            zoneOffset = null;
+        }
+        if (decoded.size < decoded.times.length) {
+            decoded.resize(decoded.size);
+        }
+        columns = decoded;
+        return complete;
+    }
+    /**
+     * Decodes the entries after the window of a windowed forecast,
+     * continuing from where the paused reader stopped, so the entries of
+     * the window are not parsed again. Does nothing if everything is
+     * decoded already. The reader, and with it the raw response, is
+     * released also if the rest is malformed; the forecast then keeps the
+     * entries of the window
+     * @throws JsonParseException if the rest of the response is malformed
+     */
+    public synchronized void decodeAll() {
+        JsonReader reader = pending;
+        if (reader == null) {
+            return;
+        }
+        try (reader) {
+            Columns decoded = columns.copy();
+            while (reader.hasNext()) {
+                decoded.parseEntry(reader);
+            }
+            reader.endArray();
+            while (reader.hasNext()) {
+                reader.nextName();
+                reader.skipValue();
+            }
+            reader.endObject();
+            decoded.resize(decoded.size);
+            columns = decoded;
+        } catch (IOException e) {
+            throw new JsonParseException(e);
+        } finally {
+            pending = null;
+        }
+    }
+    /**
+     * Finds the UTC offset of the city from the raw bytes without decoding
+     * the list before it. The city object is the last "city" key of the
+     * document
+     * @param json the raw bytes
+     * @return the offset, UTC if it is missing
+     */
+    private static ZoneOffset findCityOffset(byte[] json)
+            throws IOException {
+        for (int i = json.length - CITY_KEY.length; i >= 0; i--) {
+            if (!matchesCityKey(json, i)) {
+                continue;
+            }
+            int at = i + CITY_KEY.length;
+            while (at < json.length && json[at] != ':') {
+                if (!Character.isWhitespace(json[at])) {
+                    break;
+                }
+                at++;
+            }
+            if (at < json.length && json[at] == ':') {
+                JsonReader reader = new JsonReader(new InputStreamReader(
+                        new ByteArrayInputStream(json, at + 1,
+                                json.length - at - 1),
+                        StandardCharsets.UTF_8));
+                return JsonStreams.readCityOffset(reader);
+            }
+        }
+        return ZoneOffset.UTC;
     }
     /**
-     * Parses the provided JSON string to exctract hourly forecast data.
-     * Populates the list of forecast entries with parsed data.
-     * @param json a JSOn string containing hourly forecast data
+     * Checks whether the "city" key starts at the given position
+     * @param json the raw bytes
+     * @param at the position
+     * @return true if the key is there
      */
-    private void parse(String json) {
-        JSONObject root = new JSONObject(json);
-        JSONArray list = root.getJSONArray("list");
+    private static boolean matchesCityKey(byte[] json, int at) {
+        for (int k = 0; k < CITY_KEY.length; k++) {
+            if (json[at + k] != CITY_KEY[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * Creates a reader of UTF-8 encoded JSON
+     * @param json the raw bytes
+     * @return the reader
+     */
+    private static JsonReader jsonReader(byte[] json) {
+        return new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(json), StandardCharsets.UTF_8));
+    }
 
-        for (int i = 0; i < list.length(); i++) {
-            JSONObject item = list.getJSONObject(i);
-            String dtTxt = item.getString("dt_txt");
-            String hour = dtTxt.substring(11, 13);
+    /**
+     * Returns the UTC offset of the location
+     * @return the offset
+     */
+    public ZoneOffset getZoneOffset() {
+        return zoneOffset;
+    }
 
-            JSONObject main = item.getJSONObject("main");
-            double temperature = main.getDouble("temp") - 273.15; 
+    /**
+     * Returns the number of entries. Decodes the rest of a windowed
+     * forecast
+     * @return the number of entries
+     */
+    public int size() {
+        decodeAll();
+        return columns.size;
+    }
 
-            double rain = 0.0;
-            if (item.has("rain") && item.getJSONObject("rain").has("1h")) {
-                rain = item.getJSONObject("rain").getDouble("1h");
-            }
+    /**
+     * Returns the number of entries decoded so far, without decoding more
+     * @return the number of decoded entries
+     */
+    public int getDecodedSize() {
+        return columns.size;
+    }
 
-            String description = item.getJSONArray("weather")
-                    .getJSONObject(0).getString("description");
+    /**
+     * Checks whether all entries have been decoded, without decoding more
+     * @return true if no entries are left to decode
+     */
+    public boolean isFullyDecoded() {
+        return pending == null;
+    }
 
-            HourlyForecastEntry entry = new HourlyForecastEntry(hour,
-                    description, temperature, rain);
-            entries.add(entry);
+    /**
+     * Checks whether there is an entry at the given index. Decodes the
+     * rest of a windowed forecast only if the index is after the window
+     * @param n index of the entry
+     * @return true if the entry exists
+     */
+    public boolean hasEntry(int n) {
+        if (n < columns.size) {
+            return n >= 0;
         }
+        decodeAll();
+        return n >= 0 && n < columns.size;
     }
 
+    /**
+     * Returns the entry at the given index
+     * @param n index of the entry
+     * @return the hourly forecast entry
+     */
+    public HourlyForecastEntry getNthEntry(int n) {
+        if (!hasEntry(n)) {
+            throw new IndexOutOfBoundsException("Index: " + n
+                    + ", Size: " + columns.size);
+        }
+        return new HourlyForecastEntry(this, n);
+    }
+
+    /**
+     * Returns a read-only list view of the entries
+     * @return the entries
+     */
     public List<HourlyForecastEntry> getAllEntries() {
-        return entries;
+        return new AbstractList<HourlyForecastEntry>() {
+            @Override
+            public HourlyForecastEntry get(int index) {
+                return getNthEntry(index);
+            }
+
+            @Override
+            public int size() {
+                return HourlyForecast.this.size();
+            }
+        };
     }
-    
+
     @Override
     public Iterator<HourlyForecastEntry> iterator() {
-        return entries.iterator();
+        return new Iterator<HourlyForecastEntry>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return hasEntry(next);
+            }
+
+            @Override
+            public HourlyForecastEntry next() {
+                if (!hasEntry(next)) {
+                    throw new NoSuchElementException();
+                }
+                return new HourlyForecastEntry(HourlyForecast.this, next++);
+            }
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,389 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Shared HTTP transport for the weather API classes. It wraps a single
+ * java.net.http.HttpClient so that connections are pooled and kept alive
+ * between calls, HTTP/2 is negotiated when the server offers it and every
+ * logical API call costs exactly one request.
+ *
+ * Responses are requested gzip or deflate compressed and decompressed
+ * transparently, so callers always see the plain body.
+ *
+ * Every request passes a RateLimiter first. Requests over the per-minute
+ * budget are delayed, throttled responses are retried with backoff and
+ * requests fail fast while the limiter's circuit breaker is open.
+ *
+ * @author bpelmo
+ */
+public class HttpTransport {
+
+    private static final Duration DEFAULT_CONNECT_TIMEOUT =
+            Duration.ofSeconds(5);
+
+    private static final Duration DEFAULT_REQUEST_TIMEOUT =
+            Duration.ofSeconds(10);
+
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static HttpTransport shared;
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Builder. Constructs a transport with the default timeouts and
+     * request budgets.
+     */
+    public HttpTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT,
+                new RateLimiter());
+    }
+
+    /**
+     * Builder. Constructs a transport with the given timeouts and limiter.
+     *
+     * @param connectTimeout maximum time to wait for a connection
+     * @param requestTimeout maximum time to wait for a response
+     * @param rateLimiter limiter every request has to pass
+     */
+    public HttpTransport(Duration connectTimeout, Duration requestTimeout,
+            RateLimiter rateLimiter) {
+        this.requestTimeout = requestTimeout;
+        this.rateLimiter = rateLimiter;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * Gets the application wide transport instance. All API objects created
+     * with their default constructors share this instance and therefore
+     * its connection pool and request budget.
+     *
+     * @return shared transport
+     */
+    public static synchronized HttpTransport getShared() {
+        if (shared == null) {
+            shared = new HttpTransport();
+        }
+        return shared;
+    }
+
+    /**
+     * Gets the limiter guarding this transport, e.g. to query the usage
+     * counters.
+     *
+     * @return rate limiter
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sends a GET request and reads the whole body as a string. Blocks
+     * while waiting for the request budget and between retries.
+     *
+     * @param uri address to fetch
+     * @return the response, whatever its status code
+     * @throws IOException if the request fails or times out
+     * @throws WeatherApiException if the request is rejected by the limiter
+     */
+    public HttpResponse<String> get(URI uri) throws IOException {
+        HttpResponse.BodyHandler<String> handler = stringHandler();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                RateLimiter.Admission admission = rateLimiter.acquire();
+                HttpResponse<String> response;
+                try {
+                    TimeUnit.NANOSECONDS.sleep(admission.getDelayNanos());
+                    response = client.send(newRequest(uri, Map.of()),
+                            handler);
+                } catch (IOException e) {
+                    rateLimiter.recordFailure();
+                    throw e;
+                } catch (InterruptedException | RuntimeException e) {
+                    // Admitted but never completed: a trial request held
+                    // by the circuit breaker must be given back
+                    rateLimiter.recordAbandoned(admission);
+                    throw e;
+                }
+                rateLimiter.recordResponse(response.statusCode());
+                if (!rateLimiter.shouldRetry(response.statusCode(), attempt)) {
+                    return response;
+                }
+                TimeUnit.NANOSECONDS.sleep(rateLimiter.backoffNanos(attempt,
+                        retryAfter(response)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request interrupted: " + uri);
+        }
+    }
+
+    /**
+     * Sends a GET request without blocking the caller. The body is
+     * read as a string on the client's own threads.
+     *
+     * @param uri address to fetch
+     * @return future completing with the response, whatever its status code
+     */
+    public CompletableFuture<HttpResponse<String>> getAsync(URI uri) {
+        return getAsync(uri, Map.of());
+    }
+
+    /**
+     * Sends a GET request with extra headers without blocking the caller,
+     * e.g. a conditional request with If-None-Match.
+     *
+     * @param uri address to fetch
+     * @param headers extra request headers
+     * @return future completing with the response, whatever its status code
+     */
+    public CompletableFuture<HttpResponse<String>> getAsync(URI uri,
+            Map<String, String> headers) {
+        return sendAsync(uri, headers, stringHandler(), 0);
+    }
+
+    /**
+     * Sends a GET request without blocking the caller. The future
+     * completes as soon as the headers have arrived and the body can be
+     * consumed as a stream while it is still being received. The caller
+     * must close the stream.
+     *
+     * @param uri address to fetch
+     * @return future completing with the response, whatever its status code
+     */
+    public CompletableFuture<HttpResponse<InputStream>> getStreamAsync(
+            URI uri) {
+        return getStreamAsync(uri, Map.of());
+    }
+
+    /**
+     * Sends a GET request with extra headers without blocking the caller
+     * and streams the body. The caller must close the stream.
+     *
+     * @param uri address to fetch
+     * @param headers extra request headers
+     * @return future completing with the response, whatever its status code
+     */
+    public CompletableFuture<HttpResponse<InputStream>> getStreamAsync(
+            URI uri, Map<String, String> headers) {
+        return sendAsync(uri, headers, streamHandler(), 0);
+    }
+
+    /**
+     * Helper method to send a request asynchronously through the limiter,
+     * retrying throttled responses after a backoff.
+     *
+     * @param <T> type of the response body
+     * @param uri address to fetch
+     * @param headers extra request headers
+     * @param handler handler of the response body
+     * @param attempt number of retries made so far
+     * @return future completing with the response
+     */
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(URI uri,
+            Map<String, String> headers, HttpResponse.BodyHandler<T> handler,
+            int attempt) {
+        RateLimiter.Admission admission;
+        try {
+            admission = rateLimiter.acquire();
+        } catch (WeatherApiException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return CompletableFuture.runAsync(() -> { },
+                after(admission.getDelayNanos()))
+                .thenCompose(ignored -> client.sendAsync(
+                        newRequest(uri, headers), handler))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        rateLimiter.recordFailure();
+                        return CompletableFuture.<HttpResponse<T>>
+                                failedFuture(error);
+                    }
+                    rateLimiter.recordResponse(response.statusCode());
+                    if (!rateLimiter.shouldRetry(response.statusCode(),
+                            attempt)) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    discard(response.body());
+                    long backoff = rateLimiter.backoffNanos(attempt,
+                            retryAfter(response));
+                    return CompletableFuture.runAsync(() -> { },
+                            after(backoff))
+                            .thenCompose(ignored -> sendAsync(uri, headers,
+                                    handler, attempt + 1));
+                })
+                .thenCompose(future -> future);
+    }
+
+    /**
+     * Helper method to build a GET request with the transport defaults.
+     *
+     * @param uri address to fetch
+     * @param headers extra request headers
+     * @return request
+     */
+    private HttpRequest newRequest(URI uri, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", ACCEPT_ENCODING);
+        headers.forEach(builder::header);
+        return builder.GET().build();
+    }
+
+    /**
+     * Helper method to create a handler that decompresses the body and
+     * decodes it as a UTF-8 string.
+     *
+     * @return body handler
+     */
+    private static HttpResponse.BodyHandler<String> stringHandler() {
+        return info -> HttpResponse.BodySubscribers.mapping(
+                HttpResponse.BodySubscribers.ofByteArray(), bytes -> {
+                    try (InputStream in = decompress(
+                            new ByteArrayInputStream(bytes), info)) {
+                        return new String(in.readAllBytes(),
+                                StandardCharsets.UTF_8);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Helper method to create a handler that streams the decompressed body.
+     *
+     * @return body handler
+     */
+    private static HttpResponse.BodyHandler<InputStream> streamHandler() {
+        return info -> HttpResponse.BodySubscribers.mapping(
+                HttpResponse.BodySubscribers.ofInputStream(),
+                in -> decompress(in, info));
+    }
+
+    /**
+     * Helper method to wrap a body in a decompressing stream matching its
+     * Content-Encoding. Nothing is read here: the gzip header is only read
+     * on first use, as the body may not have arrived yet.
+     *
+     * @param in the raw body
+     * @param info status and headers of the response
+     * @return the decompressed body
+     */
+    private static InputStream decompress(InputStream in,
+            HttpResponse.ResponseInfo info) {
+        String encoding = info.headers().firstValue("Content-Encoding")
+                .orElse("").trim();
+        if ("gzip".equalsIgnoreCase(encoding)) {
+            return new GzipBodyStream(in);
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            return new InflaterInputStream(in);
+        }
+        return in;
+    }
+
+    /**
+     * Gzip decompressing stream that reads the gzip header lazily.
+     */
+    private static final class GzipBodyStream extends InputStream {
+        private final InputStream raw;
+        private InputStream gzip;
+
+        private GzipBodyStream(InputStream raw) {
+            this.raw = raw;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return stream().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return stream().read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (gzip != null) {
+                gzip.close();
+            } else {
+                raw.close();
+            }
+        }
+
+        private InputStream stream() throws IOException {
+            if (gzip == null) {
+                gzip = new GZIPInputStream(raw);
+            }
+            return gzip;
+        }
+    }
+
+    /**
+     * Helper method to get an executor that runs tasks after a delay.
+     *
+     * @param nanos delay in nanoseconds
+     * @return executor
+     */
+    private static Executor after(long nanos) {
+        if (nanos <= 0) {
+            return Runnable::run;
+        }
+        return CompletableFuture.delayedExecutor(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Helper method to read the Retry-After header in seconds.
+     *
+     * @param response the response
+     * @return seconds to wait, or -1 if the header is missing or a date
+     */
+    private static long retryAfter(HttpResponse<?> response) {
+        try {
+            return response.headers().firstValue("Retry-After")
+                    .map(Long::parseLong).orElse(-1L);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Helper method to release the body of a response that is retried.
+     *
+     * @param body the body
+     */
+    private static void discard(Object body) {
+        if (body instanceof Closeable) {
+            try {
+                ((Closeable) body).close();
+            } catch (IOException e) {
+                // Nothing to do, the connection is released anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+
+/**
+ * Application wide cache of decoded icons. Every icon is decoded once per
+ * size it is shown in, already scaled to that size, so views showing the
+ * same icon again get the decoded image without reading the resource.
+ * Images for the map are kept as BufferedImages, converted once from the
+ * decoded icon.
+ *
+ * The cache is bounded by a memory budget counted as four bytes per pixel.
+ * When it is exceeded, the least recently used images are evicted. Icons
+ * are decoded outside the lock, so a preload running in the background
+ * does not block the views.
+ *
+ * @author bpelmo
+ */
+public final class IconCache {
+
+    // Room for every weather icon in all sizes used by the views
+    private static final long DEFAULT_BUDGET = 16L * 1024 * 1024;
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static IconCache shared;
+
+    private final long budget;
+    private final Map<String, CachedImage> images =
+            new LinkedHashMap<>(64, 0.75f, true);
+    private long usedBytes;
+    private long decodeCount;
+
+    /**
+     * A cached image with the memory it takes.
+     */
+    private static final class CachedImage {
+        private final Object image;
+        private final long bytes;
+
+        private CachedImage(Object image, long bytes) {
+            this.image = image;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Builder. Constructs an empty cache.
+     *
+     * @param budget maximum memory of the cached images in bytes
+     */
+    public IconCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Gets the application wide cache with the default budget.
+     *
+     * @return shared cache
+     */
+    public static synchronized IconCache getShared() {
+        if (shared == null) {
+            shared = new IconCache(DEFAULT_BUDGET);
+        }
+        return shared;
+    }
+
+    /**
+     * Gets an icon scaled to a square of the given size.
+     *
+     * @param path resource path of the icon, e.g. "/images/sun.png"
+     * @param size width and height in pixels
+     * @return the image, or null if the resource cannot be read
+     */
+    public Image get(String path, int size) {
+        String key = path + "@" + size;
+        Image image = (Image) lookUp(key);
+        if (image == null) {
+            image = decode(path, size);
+            if (image != null) {
+                store(key, image, image.getWidth() * image.getHeight());
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Gets an icon scaled to a square of the given size as a
+     * BufferedImage, for drawing with AWT.
+     *
+     * @param path resource path of the icon
+     * @param size width and height in pixels
+     * @return the image, or null if the resource cannot be read
+     */
+    public BufferedImage getBuffered(String path, int size) {
+        String key = path + "@" + size + "/awt";
+        BufferedImage buffered = (BufferedImage) lookUp(key);
+        if (buffered == null) {
+            Image image = get(path, size);
+            if (image == null) {
+                return null;
+            }
+            buffered = SwingFXUtils.fromFXImage(image, null);
+            store(key, buffered,
+                    (double) buffered.getWidth() * buffered.getHeight());
+        }
+        return buffered;
+    }
+
+    /**
+     * Decodes every weather icon in the given sizes on a background
+     * thread, so the first search finds them decoded already.
+     *
+     * @param sizes sizes the icons are shown in
+     * @return future completing when all icons are decoded
+     */
+    public CompletableFuture<Void> preload(int... sizes) {
+        return CompletableFuture.runAsync(() -> {
+            for (int size : sizes) {
+                for (int i = 0; i < WeatherCondition.getIconCount(); i++) {
+                    get(WeatherCondition.getIconPath(i), size);
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the number of images decoded so far.
+     *
+     * @return decode count
+     */
+    public synchronized long getDecodeCount() {
+        return decodeCount;
+    }
+
+    /**
+     * Gets the memory taken by the cached images.
+     *
+     * @return bytes in use
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Removes all cached images.
+     */
+    public synchronized void clear() {
+        images.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Helper method to get a cached image.
+     *
+     * @param key key of the image
+     * @return the image, or null if it is not cached
+     */
+    private synchronized Object lookUp(String key) {
+        CachedImage cached = images.get(key);
+        return cached != null ? cached.image : null;
+    }
+
+    /**
+     * Helper method to add an image and evict the least recently used
+     * ones while the budget is exceeded. An image decoded by two threads
+     * at once replaces the copy stored first.
+     *
+     * @param key key of the image
+     * @param image the image
+     * @param pixels number of pixels in the image
+     */
+    private synchronized void store(String key, Object image,
+            double pixels) {
+        CachedImage cached = new CachedImage(image,
+                (long) pixels * BYTES_PER_PIXEL);
+        CachedImage previous = images.put(key, cached);
+        if (previous != null) {
+            usedBytes -= previous.bytes;
+        }
+        usedBytes += cached.bytes;
+        Iterator<CachedImage> eldest = images.values().iterator();
+        while (usedBytes > budget && eldest.hasNext()) {
+            CachedImage evicted = eldest.next();
+            if (evicted != cached) {
+                usedBytes -= evicted.bytes;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Helper method to decode an icon scaled to the given size.
+     *
+     * @param path resource path of the icon
+     * @param size width and height in pixels
+     * @return the image, or null if the resource cannot be read
+     */
+    private Image decode(String path, int size) {
+        try (InputStream imageStream = getClass()
+                .getResourceAsStream(path)) {
+            if (imageStream == null) {
+                return null;
+            }
+            Image image = new Image(imageStream, size, size, false, true);
+            if (image.isError()) {
+                return null;
+            }
+            synchronized (this) {
+                decodeCount++;
+            }
+            return image;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
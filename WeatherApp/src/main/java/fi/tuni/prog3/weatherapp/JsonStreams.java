@@ -0,0 +1,102 @@
+package fi.tuni.prog3.weatherapp;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.time.ZoneOffset;
+
+/**
+ * Helper methods shared by the streaming JSON parsers of the weather models.
+ * All methods expect the reader to be positioned at the value they read and
+ * leave it positioned right after that value.
+ * 
+ * @author bpelmo
+ */
+final class JsonStreams {
+    
+    private JsonStreams() {
+    }
+    
+    /**
+     * Reads the condition code of the first element of a "weather" array
+     * and skips the rest of the array. The description is not read, it is
+     * looked up from WeatherCondition when needed.
+     * 
+     * @param reader reader positioned at the array
+     * @return the condition code, WeatherCondition.UNKNOWN if it is missing
+     * @throws IOException if the JSON is malformed
+     */
+    static short readConditionCode(JsonReader reader) throws IOException {
+        short code = WeatherCondition.UNKNOWN;
+        reader.beginArray();
+        if (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("id".equals(reader.nextName())) {
+                    code = (short) reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        return code;
+    }
+    
+    /**
+     * Reads a rain amount that is either a plain number or an object
+     * holding the amount under the given key, e.g. {"1h": 0.3}.
+     * 
+     * @param reader reader positioned at the value
+     * @param key key of the amount inside an object
+     * @return the amount of rain, 0 if it is missing
+     * @throws IOException if the JSON is malformed
+     */
+    static double readRain(JsonReader reader, String key) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NUMBER) {
+            return reader.nextDouble();
+        }
+        if (token != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return 0.0;
+        }
+        double rain = 0.0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (key.equals(reader.nextName())) {
+                rain = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return rain;
+    }
+    
+    /**
+     * Reads the UTC offset of a location from a "city" object, which holds
+     * it in seconds under "timezone".
+     * 
+     * @param reader reader positioned at the object
+     * @return the offset, UTC if it is missing
+     * @throws IOException if the JSON is malformed
+     */
+    static ZoneOffset readCityOffset(JsonReader reader) throws IOException {
+        ZoneOffset offset = ZoneOffset.UTC;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("timezone".equals(reader.nextName())) {
+                offset = ZoneOffset.ofTotalSeconds(reader.nextInt());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return offset;
+    }
+}
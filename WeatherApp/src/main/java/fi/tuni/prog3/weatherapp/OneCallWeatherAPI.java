@@ -0,0 +1,120 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implementation of AsyncWeatherAPI on top of the One Call endpoint of the
+ * OpenWeatherMap API, which returns the current weather, the hourly forecast
+ * and the daily forecast of a location in a single response. The response
+ * is split into the three weather models, so a search needs one weather
+ * request instead of three.
+ *
+ * The three getters of a search share the same request: a request already
+ * in flight is joined, and a bundle received within the last minute is
+ * reused. Location lookups are made as with AsyncOpenWeatherAPI, since One
+ * Call does not resolve names.
+ *
+ * @author bpelmo
+ */
+public class OneCallWeatherAPI implements AsyncWeatherAPI {
+
+    // Long enough for the getters of one search to share a bundle
+    private static final long BUNDLE_TTL_SECONDS = 60;
+
+    private static final int MAX_BUNDLES = 16;
+
+    private final HttpTransport transport;
+    private final Executor parseExecutor;
+    private final AsyncWeatherAPI locator;
+    private final SingleFlight<String> inFlight = new SingleFlight<>();
+    private final TtlCache<String, WeatherBundle> bundles =
+            new TtlCache<>(BUNDLE_TTL_SECONDS, TimeUnit.SECONDS, MAX_BUNDLES);
+
+    /**
+     * Builder. Constructs an API object that uses the shared transport and
+     * geocoding cache and parses responses on a small pool of its own.
+     */
+    public OneCallWeatherAPI() {
+        this(HttpTransport.getShared(), AsyncOpenWeatherAPI.newParseExecutor(),
+                GeocodingCache.getShared());
+    }
+
+    /**
+     * Builder. Constructs an API object from the given transport, parse
+     * executor and geocoding cache.
+     *
+     * @param transport transport used for all requests
+     * @param parseExecutor executor the responses are parsed on
+     * @param geocodingCache cache for location lookups
+     */
+    public OneCallWeatherAPI(HttpTransport transport, Executor parseExecutor,
+            GeocodingCache geocodingCache) {
+        this.transport = transport;
+        this.parseExecutor = parseExecutor;
+        this.locator = new AsyncOpenWeatherAPI(transport, parseExecutor,
+                geocodingCache);
+    }
+
+    @Override
+    public CompletableFuture<double[]> lookUpLocation(String loc) {
+        return locator.lookUpLocation(loc);
+    }
+
+    @Override
+    public CompletableFuture<CurrentWeather> getCurrentWeather(
+            double[] coordinates) {
+        return bundle(coordinates).thenApply(
+                WeatherBundle::getCurrentWeather);
+    }
+
+    @Override
+    public CompletableFuture<Forecast> getDailyForecast(double[] coordinates) {
+        return bundle(coordinates).thenApply(WeatherBundle::getForecast);
+    }
+
+    @Override
+    public CompletableFuture<HourlyForecast> getHourlyForecast(
+            double[] coordinates) {
+        return bundle(coordinates).thenApply(
+                WeatherBundle::getHourlyForecast);
+    }
+
+    /**
+     * Helper method to get the bundle of a location, fetching it unless
+     * it was received recently or is being fetched already.
+     *
+     * @param coordinates latitude and longitude
+     * @return future of the bundle
+     */
+    private CompletableFuture<WeatherBundle> bundle(double[] coordinates) {
+        URI uri = OpenWeatherAPI.weatherUri(coordinates[0], coordinates[1],
+                OpenWeatherAPI.ONECALL_ENDPOINT, null);
+        String key = uri.toString();
+        WeatherBundle recent = bundles.get(key);
+        if (recent != null) {
+            return CompletableFuture.completedFuture(recent);
+        }
+        return inFlight.execute(key, () -> transport.getStreamAsync(uri)
+                .thenApplyAsync(response -> {
+            try (InputStream in = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new WeatherApiException(response.statusCode());
+                }
+                WeatherBundle bundle = WeatherBundle.parse(
+                        new InputStreamReader(in, StandardCharsets.UTF_8));
+                bundles.put(key, bundle);
+                return bundle;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, parseExecutor));
+    }
+}
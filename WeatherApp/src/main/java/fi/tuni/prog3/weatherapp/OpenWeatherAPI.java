@@ -1,17 +1,19 @@
 package fi.tuni.prog3.weatherapp;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Scanner;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import org.json.JSONObject;
 
 /**
  * This class provides methods to interact with the OpenWeatherMap API.
  * It implements the iAPI interface to fetch weather data like current weather,
  * daily forecast, and hourly forecast based on location coordinates.
- * It uses Java's HttpURLConnection to make HTTP requests and JSONObjects 
- * to parse the received data. 
+ * Requests go through a shared HttpTransport, so each call is a single
+ * request over a pooled connection, and JSONObjects are used to parse
+ * the received data. 
  * 
  * ChatGPT 4 was used in coding, debugging, testing and commenting this class.
  * 
@@ -28,6 +30,53 @@ public class OpenWeatherAPI implements iAPI {
     private static final String PRO_URL = 
             "BASE_URL_PRO_ENV";
     
+    static final String CURRENT_ENDPOINT = "weather";
+    
+    static final String DAILY_ENDPOINT = "forecast/daily";
+    
+    static final String DAILY_COUNT = "16";
+    
+    static final String HOURLY_ENDPOINT = "forecast/hourly";
+    
+    static final String ONECALL_ENDPOINT = "onecall";
+    
+    // One Call is served by version 3.0 of the API
+    private static final String ONECALL_URL = 
+            "BASE_URL_ONECALL_ENV";
+    
+    // Parts of the One Call response that the models do not use
+    private static final String ONECALL_EXCLUDE = "minutely,alerts";
+    
+    /**
+     * System property that replaces the address of every server, e.g.
+     * "http://localhost:8089/" to use a FixtureServer.
+     */
+    static final String BASE_URL_PROPERTY = "weatherapp.baseUrl";
+    
+    private final HttpTransport transport;
+    private final GeocodingCache geocodingCache;
+    
+    /**
+     * Builder. Constructs an API object that uses the shared transport
+     * and geocoding cache.
+     */
+    public OpenWeatherAPI() {
+        this(HttpTransport.getShared(), GeocodingCache.getShared());
+    }
+    
+    /**
+     * Builder. Constructs an API object that uses the given transport
+     * and geocoding cache.
+     * 
+     * @param transport transport used for all requests
+     * @param geocodingCache cache for location lookups
+     */
+    public OpenWeatherAPI(HttpTransport transport,
+            GeocodingCache geocodingCache) {
+        this.transport = transport;
+        this.geocodingCache = geocodingCache;
+    }
+    
     /**
      * Look up the geographic coordinates (latitude, longitude)
      * for a given location name.
@@ -38,30 +87,14 @@ public class OpenWeatherAPI implements iAPI {
      */
     @Override
     public double[] lookUpLocation(String loc) {
+        double[] cached = geocodingCache.get(loc);
+        if (cached != null) {
+            return GeocodingCache.isUnknown(cached) ? null : cached;
+        }
         try {
-            URL url = new URL(BASE_URL + "weather?q=" + loc + 
-                    "&appid=" + API_KEY);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.connect();
-            int responseCode = conn.getResponseCode();
-
-            if (responseCode != 200) { // Handle unsuccessful responses
-                return null; // Return null to indicate failure
-            } else {
-                Scanner sc = new Scanner(url.openStream());
-                StringBuilder inline = new StringBuilder();
-                while (sc.hasNext()) {
-                    inline.append(sc.nextLine());
-                }
-                sc.close();
-
-                JSONObject jsonObj = new JSONObject(inline.toString());
-                double lat = jsonObj.getJSONObject("coord").getDouble("lat");
-                double lon = jsonObj.getJSONObject("coord").getDouble("lon");
-                return new double[]{lat, lon};
-            }
-        } catch (IOException e) {
+            HttpResponse<String> response = transport.get(locationUri(loc));
+            return readCoordinates(geocodingCache, loc, response);
+        } catch (IOException | WeatherApiException e) {
             return null;
         }
     }
@@ -76,7 +109,7 @@ public class OpenWeatherAPI implements iAPI {
     @Override
     public String getCurrentWeather(double[] coordinates) {
         String currentWeatherString= getWeatherData(coordinates[0], 
-                coordinates[1], "weather", null);
+                coordinates[1], CURRENT_ENDPOINT, null);
         return currentWeatherString;
     }
     
@@ -90,7 +123,7 @@ public class OpenWeatherAPI implements iAPI {
     @Override
     public String getDailyForecast(double[] coordinates) {
         String forecastString = getWeatherData(coordinates[0],
-                coordinates[1], "forecast/daily", "16");
+                coordinates[1], DAILY_ENDPOINT, DAILY_COUNT);
         return forecastString;
     }
     
@@ -104,7 +137,7 @@ public class OpenWeatherAPI implements iAPI {
     @Override
     public String getHourlyForecast(double[] coordinates) {
         String hourlyForecastString = getWeatherData(coordinates[0],
-                coordinates[1], "forecast/hourly", null);
+                coordinates[1], HOURLY_ENDPOINT, null);
         return hourlyForecastString;
     }
 
@@ -119,38 +152,115 @@ public class OpenWeatherAPI implements iAPI {
     private String getWeatherData(double lat, double lon, String 
             endpoint, String cnt) {
         try {
-            URL url;
-            if ("forecast/hourly".equals(endpoint)){
-                url = new URL(PRO_URL + endpoint + "?lat=" + lat
-                        + "&lon=" + lon + "&appid=" + API_KEY);
-            } else {
-                            if (cnt != null) {
-                url = new URL(BASE_URL + endpoint + "?lat=" + lat
-                        + "&lon=" + lon + "&cnt=" + cnt + "&appid=" + API_KEY);
-                } else {
-                        url = new URL(BASE_URL + endpoint + "?lat=" + lat
-                            + "&lon=" + lon + "&appid=" + API_KEY);
-            }
-            }
-
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.connect();
-            int responseCode = conn.getResponseCode();
+            HttpResponse<String> response = transport.get(
+                    weatherUri(lat, lon, endpoint, cnt));
+            int responseCode = response.statusCode();
 
             if (responseCode != 200) {
-                throw new RuntimeException("HttpResponseCode: " + responseCode);
+                throw new WeatherApiException(responseCode);
             } else {
-                Scanner sc = new Scanner(url.openStream());
-                StringBuilder inline = new StringBuilder();
-                while (sc.hasNext()) {
-                    inline.append(sc.nextLine());
-                }
-                sc.close();
-                return inline.toString();
+                return response.body();
             }
         } catch (IOException e) {
         }
         return null;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Builds the address used to look up the coordinates of a location.
+     * 
+     * @param loc the location name
+     * @return address of the lookup request
+     */
+    static URI locationUri(String loc) {
+        return URI.create(server(BASE_URL) + "weather?q=" + encode(loc) + 
+                "&appid=" + API_KEY);
+    }
+    
+    /**
+     * Builds the address of a weather endpoint. The hourly forecast is only
+     * available from the Pro server and One Call from the 3.0 server, the
+     * other endpoints use the base server.
+     * 
+     * @param lat latitude
+     * @param lon longitude
+     * @param endpoint endpoint path, e.g. "forecast/daily"
+     * @param cnt number of entries to request or null for the default
+     * @return address of the request
+     */
+    static URI weatherUri(double lat, double lon, String endpoint,
+            String cnt) {
+        String base = BASE_URL;
+        if (HOURLY_ENDPOINT.equals(endpoint)) {
+            base = PRO_URL;
+        } else if (ONECALL_ENDPOINT.equals(endpoint)) {
+            base = ONECALL_URL;
+        }
+        StringBuilder url = new StringBuilder(server(base)).append(endpoint)
+                .append("?lat=").append(lat)
+                .append("&lon=").append(lon);
+        if (cnt != null) {
+            url.append("&cnt=").append(cnt);
+        }
+        if (ONECALL_ENDPOINT.equals(endpoint)) {
+            url.append("&exclude=").append(ONECALL_EXCLUDE);
+        }
+        url.append("&appid=").append(API_KEY);
+        return URI.create(url.toString());
+    }
+    
+    /**
+     * Reads the coordinates from a lookup response and stores the result
+     * in the geocoding cache. A 404 response means the location is unknown,
+     * other errors are not cached.
+     * 
+     * @param geocodingCache cache to store the result in
+     * @param loc the location name
+     * @param response response of the lookup request
+     * @return an array of latitude and longitude or null if the lookup failed
+     */
+    static double[] readCoordinates(GeocodingCache geocodingCache,
+            String loc, HttpResponse<String> response) {
+        if (response.statusCode() == 404) {
+            geocodingCache.put(loc, null);
+            return null;
+        } else if (response.statusCode() != 200) {
+            return null; // Return null to indicate failure
+        }
+        double[] coordinates = parseCoordinates(response.body());
+        geocodingCache.put(loc, coordinates);
+        return coordinates;
+    }
+    
+    /**
+     * Reads the coordinates from a current weather document.
+     * 
+     * @param json current weather data
+     * @return an array of latitude and longitude
+     */
+    static double[] parseCoordinates(String json) {
+        JSONObject coord = new JSONObject(json).getJSONObject("coord");
+        return new double[]{coord.getDouble("lat"), coord.getDouble("lon")};
+    }
+    
+    /**
+     * Helper method to get the address of a server, unless all requests
+     * are redirected with the BASE_URL_PROPERTY system property.
+     * 
+     * @param url default address of the server
+     * @return address to use
+     */
+    private static String server(String url) {
+        return System.getProperty(BASE_URL_PROPERTY, url);
+    }
+    
+    /**
+     * URL encodes a query parameter value.
+     * 
+     * @param value raw value
+     * @return encoded value
+     */
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,244 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side guard in front of the HTTP transport for a metered API key.
+ * It keeps requests within a per-minute and a per-day budget, decides when
+ * a throttled response is retried and how long to back off, and trips a
+ * circuit breaker while the server keeps failing. Usage counters can be
+ * queried, e.g. to report how much of the budget is left.
+ * 
+ * Requests over the per-minute budget are delayed, requests over the
+ * per-day budget or while the circuit is open fail fast. The circuit
+ * breaker is asked first, so a request failing fast does not spend the
+ * daily budget, and the budget is checked and spent in one step.
+ * 
+ * @author bpelmo
+ */
+public class RateLimiter {
+    
+    private static final int DEFAULT_PER_MINUTE = 60;
+    
+    private static final int DEFAULT_PER_DAY = 1000;
+    
+    private static final int MAX_RETRIES = 3;
+    
+    private static final long BASE_BACKOFF_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(500);
+    
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30);
+    
+    private final TokenBucket minuteBucket;
+    private final TokenBucket dayBucket;
+    private final CircuitBreaker circuitBreaker;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    
+    /**
+     * An admitted request: how long to wait before sending it and whether
+     * it is the trial request of the circuit breaker.
+     */
+    public static final class Admission {
+        private final long delayNanos;
+        private final CircuitBreaker.Permit permit;
+        
+        private Admission(long delayNanos, CircuitBreaker.Permit permit) {
+            this.delayNanos = delayNanos;
+            this.permit = permit;
+        }
+        
+        /**
+         * Gets the time the caller must wait before sending.
+         * 
+         * @return time in nanoseconds
+         */
+        public long getDelayNanos() {
+            return delayNanos;
+        }
+    }
+    
+    /**
+     * Builder. Constructs a limiter with the default budgets of 60 requests
+     * per minute and 1000 per day.
+     */
+    public RateLimiter() {
+        this(DEFAULT_PER_MINUTE, DEFAULT_PER_DAY,
+                new CircuitBreaker(5, 30, TimeUnit.SECONDS));
+    }
+    
+    /**
+     * Builder. Constructs a limiter with the given budgets.
+     * 
+     * @param perMinute requests allowed per minute
+     * @param perDay requests allowed per day
+     * @param circuitBreaker breaker tripped by failing requests
+     */
+    public RateLimiter(int perMinute, int perDay,
+            CircuitBreaker circuitBreaker) {
+        this.minuteBucket = new TokenBucket(perMinute, 1, TimeUnit.MINUTES);
+        this.dayBucket = new TokenBucket(perDay, 1, TimeUnit.DAYS);
+        this.circuitBreaker = circuitBreaker;
+    }
+    
+    /**
+     * Admits a request. Must be called before every request, retries
+     * included.
+     * 
+     * @return the admission, telling how long to wait before sending
+     * @throws WeatherApiException if the circuit is open or the daily
+     * budget is spent
+     */
+    public Admission acquire() {
+        CircuitBreaker.Permit permit = circuitBreaker.allowRequest();
+        if (permit == CircuitBreaker.Permit.DENIED) {
+            rejected.incrementAndGet();
+            throw new WeatherApiException(
+                    "Weather service unavailable, try again later");
+        }
+        if (!dayBucket.tryAcquire()) {
+            circuitBreaker.recordAbandoned(permit);
+            rejected.incrementAndGet();
+            throw new WeatherApiException("Daily request budget spent");
+        }
+        sent.incrementAndGet();
+        return new Admission(minuteBucket.reserve(), permit);
+    }
+    
+    /**
+     * Records the status of a response. Throttling and server errors count
+     * as failures for the circuit breaker, everything else as success.
+     * 
+     * @param statusCode HTTP status code of the response
+     */
+    public void recordResponse(int statusCode) {
+        if (statusCode == 429) {
+            throttled.incrementAndGet();
+            circuitBreaker.recordFailure();
+        } else if (statusCode >= 500) {
+            failed.incrementAndGet();
+            circuitBreaker.recordFailure();
+        } else {
+            circuitBreaker.recordSuccess();
+        }
+    }
+    
+    /**
+     * Records a request that failed without a response, e.g. a timeout.
+     */
+    public void recordFailure() {
+        failed.incrementAndGet();
+        circuitBreaker.recordFailure();
+    }
+    
+    /**
+     * Records a request that was admitted but never completed, e.g.
+     * because the waiting thread was interrupted. It counts neither as a
+     * success nor as a failure. A trial request gives its trial back.
+     * 
+     * @param admission the admission of the request
+     */
+    public void recordAbandoned(Admission admission) {
+        circuitBreaker.recordAbandoned(admission.permit);
+    }
+    
+    /**
+     * Checks whether a response should be retried.
+     * 
+     * @param statusCode HTTP status code of the response
+     * @param attempt number of retries made so far
+     * @return true if the request should be sent again
+     */
+    public boolean shouldRetry(int statusCode, int attempt) {
+        return (statusCode == 429 || statusCode == 503)
+                && attempt < MAX_RETRIES;
+    }
+    
+    /**
+     * Gets the time to wait before a retry: exponential backoff with full
+     * jitter, but never shorter than the server's Retry-After.
+     * 
+     * @param attempt number of retries made so far
+     * @param retryAfterSeconds value of the Retry-After header, or -1
+     * @return time to wait in nanoseconds
+     */
+    public long backoffNanos(int attempt, long retryAfterSeconds) {
+        long ceiling = Math.min(MAX_BACKOFF_NANOS,
+                BASE_BACKOFF_NANOS << Math.min(attempt, 16));
+        long backoff = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        if (retryAfterSeconds > 0) {
+            backoff = Math.max(backoff,
+                    TimeUnit.SECONDS.toNanos(retryAfterSeconds));
+        }
+        return backoff;
+    }
+    
+    /**
+     * Gets the number of requests that can be sent right now without
+     * waiting.
+     * 
+     * @return remaining per-minute budget
+     */
+    public long getRemainingPerMinute() {
+        return minuteBucket.available();
+    }
+    
+    /**
+     * Gets the number of requests left in the daily budget.
+     * 
+     * @return remaining per-day budget
+     */
+    public long getRemainingPerDay() {
+        return dayBucket.available();
+    }
+    
+    /**
+     * Checks whether requests are currently failing fast.
+     * 
+     * @return true if the circuit breaker is open
+     */
+    public boolean isCircuitOpen() {
+        return circuitBreaker.isOpen();
+    }
+    
+    /**
+     * Gets the number of requests sent, retries included.
+     * 
+     * @return sent request count
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+    
+    /**
+     * Gets the number of responses the server throttled with 429.
+     * 
+     * @return throttled response count
+     */
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+    
+    /**
+     * Gets the number of requests rejected without being sent.
+     * 
+     * @return rejected request count
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+    
+    /**
+     * Gets the number of requests that failed with a server error or
+     * without a response.
+     * 
+     * @return failed request count
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+}
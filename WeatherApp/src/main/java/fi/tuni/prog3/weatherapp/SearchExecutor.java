@@ -0,0 +1,160 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+
+/**
+ * Runs weather searches as background jobs so that network I/O and parsing
+ * never block the JavaFX Application Thread. Only the latest search matters:
+ * submitting a new job cancels the one in flight, and results of a cancelled
+ * or superseded job are never published. Results are handed back to the
+ * JavaFX Application Thread through Platform.runLater.
+ *
+ * The project targets Java 11, so jobs run on a small bounded pool of daemon
+ * threads instead of virtual threads.
+ *
+ * @author bpelmo
+ */
+public class SearchExecutor {
+
+    /**
+     * A unit of work run by the executor.
+     *
+     * @param <T> type of the result
+     */
+    public interface Job<T> {
+
+        /**
+         * Runs the job.
+         * @return result of the job
+         * @throws Exception if the job fails or is interrupted
+         */
+        public T run() throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private Future<?> current;
+    private long generation;
+
+    /**
+     * Builder. Constructs an executor with the given number of threads.
+     *
+     * @param threads maximum number of concurrently running jobs
+     */
+    public SearchExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable,
+                    "search-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(threads, threads, 30,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Submits a job, cancelling the one currently in flight. Exactly one of
+     * the callbacks is called on the JavaFX Application Thread, unless the
+     * job is cancelled or superseded before it finishes.
+     *
+     * @param <T> type of the result
+     * @param job the work to run in the background
+     * @param onSuccess called with the result of the job
+     * @param onFailure called with the exception thrown by the job
+     */
+    public synchronized <T> void submit(Job<T> job, Consumer<T> onSuccess,
+            Consumer<Throwable> onFailure) {
+        cancel();
+        long jobGeneration = generation;
+        current = executor.submit(() -> {
+            try {
+                T result = job.run();
+                publish(jobGeneration, () -> onSuccess.accept(result));
+            } catch (InterruptedException | CancellationException e) {
+                // Superseded by a newer search, nothing to publish.
+            } catch (Exception e) {
+                publish(jobGeneration, () -> onFailure.accept(e));
+            }
+        });
+    }
+
+    /**
+     * Cancels the job in flight, if any.
+     */
+    public synchronized void cancel() {
+        generation++;
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+        }
+    }
+
+    /**
+     * Cancels the job in flight and stops the worker threads.
+     */
+    public synchronized void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Waits for a future inside a job. Unlike join this reacts to the
+     * interrupt sent when the job is cancelled.
+     *
+     * @param <T> type of the result
+     * @param future the future to wait for
+     * @return result of the future
+     * @throws Exception the exception the future failed with
+     */
+    public static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Helper method to run a callback on the JavaFX Application Thread if
+     * the job that produced it is still the latest one.
+     *
+     * @param jobGeneration generation of the job
+     * @param callback callback to run
+     */
+    private void publish(long jobGeneration, Runnable callback) {
+        Platform.runLater(() -> {
+            if (isCurrent(jobGeneration)) {
+                callback.run();
+            }
+        });
+    }
+
+    /**
+     * Helper method to check whether a job is still the latest one.
+     *
+     * @param jobGeneration generation of the job
+     * @return true if no newer job has been submitted or cancelled
+     */
+    private synchronized boolean isCurrent(long jobGeneration) {
+        return generation == jobGeneration;
+    }
+}
@@ -0,0 +1,70 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent requests for the same key. While a request for a key
+ * is in flight, later callers asking for the same key are attached to it
+ * instead of starting a request of their own. Once the request completes
+ * the key is released and the next caller starts a fresh one.
+ * 
+ * Every caller gets its own copy of the shared future, so a caller
+ * cancelling its copy does not cancel the request for the others.
+ * 
+ * @param <K> type of the keys
+ * 
+ * @author bpelmo
+ */
+public class SingleFlight<K> {
+    
+    private final Map<K, CompletableFuture<?>> inFlight =
+            new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+    
+    /**
+     * Runs a request unless one for the same key is already in flight.
+     * Callers must use the same result type for the same key.
+     * 
+     * @param <V> type of the result
+     * @param key identifies the request, e.g. its address
+     * @param request starts the request
+     * @return future of the result
+     */
+    @SuppressWarnings("unchecked")
+    public <V> CompletableFuture<V> execute(K key,
+            Supplier<CompletableFuture<V>> request) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<?> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return ((CompletableFuture<V>) existing).copy();
+        }
+        try {
+            request.get().whenComplete((value, error) -> {
+                inFlight.remove(key, created);
+                if (error != null) {
+                    created.completeExceptionally(error);
+                } else {
+                    created.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created.copy();
+    }
+    
+    /**
+     * Gets the number of callers attached to a request already in flight.
+     * 
+     * @return number of coalesced calls
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,395 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+
+/**
+ * Compact binary file holding the parsed weather of one location: its
+ * coordinates, current weather, daily and hourly forecasts. All values are
+ * fixed-width primitives, the forecasts are stored column by column like in
+ * the models and strings are kept in a string table at the start.
+ *
+ * A file is small, so opening it reads it into memory in one go and closes
+ * it again. Nothing keeps the file open or mapped afterwards, so a newer
+ * snapshot can replace it on every platform, also while the old one is
+ * being read. Opening only checks the header; each section is decoded when
+ * it is asked for, so e.g. the location name and fetch time can be read
+ * without touching the forecasts.
+ *
+ * Layout, all numbers big-endian:
+ * <pre>
+ * header   int magic, short version, short reserved, long fetchedAt,
+ *          double latitude, double longitude,
+ *          int offsets of the strings, current, daily and hourly sections
+ *          (-1 if the section is missing)
+ * strings  short count, count times (short length, UTF-8 bytes);
+ *          string 0 is the location name
+ * current  short code, short reserved, int humidity, int windDirection,
+ *          int utcOffset, double temperature, double feelsLike,
+ *          double windSpeed, long sunrise, long sunset
+ * daily    int count, int utcOffset, long[count] times,
+ *          double[count] minTemps, double[count] maxTemps,
+ *          double[count] rains, short[count] codes
+ * hourly   int count, int utcOffset, long[count] times,
+ *          double[count] temperatures, double[count] rains,
+ *          short[count] codes
+ * </pre>
+ * Condition descriptions are not stored, they come from WeatherCondition.
+ *
+ * @author bpelmo
+ */
+public final class SnapshotFile {
+
+    /**
+     * Magic number at the start of every snapshot, "WSNP".
+     */
+    static final int MAGIC = 0x57534E50;
+
+    /**
+     * Version of the layout. Files of other versions are not read.
+     */
+    static final short VERSION = 1;
+
+    private static final int HEADER_SIZE = 48;
+    private static final int CURRENT_SIZE = 56;
+    private static final int MISSING = -1;
+
+    private final ByteBuffer buffer;
+    private final String[] strings;
+
+    /**
+     * Builder. Constructs a reader of a checked snapshot.
+     *
+     * @param buffer the whole file
+     * @param strings the decoded string table
+     */
+    private SnapshotFile(ByteBuffer buffer, String[] strings) {
+        this.buffer = buffer;
+        this.strings = strings;
+    }
+
+    /**
+     * Writes a snapshot. The file is written next to the target first and
+     * then moved over it, so a reader never sees a half written file. The
+     * temporary file has a fixed name, so a write that was cut off leaves
+     * no stray file behind once the snapshot is written again; the same
+     * path must therefore not be written from two threads at once.
+     * Of a windowed hourly forecast only the entries decoded so far are
+     * written, writing does not decode the rest.
+     *
+     * @param path path of the snapshot
+     * @param location name of the location
+     * @param coordinates latitude and longitude
+     * @param fetchedAt time the data was fetched in epoch milliseconds
+     * @param current current weather, or null
+     * @param daily daily forecast, or null
+     * @param hourly hourly forecast, or null
+     * @throws IOException if writing fails
+     */
+    public static void write(Path path, String location, double[] coordinates,
+            long fetchedAt, CurrentWeather current, Forecast daily,
+            HourlyForecast hourly) throws IOException {
+        byte[] name = location.getBytes(StandardCharsets.UTF_8);
+        int stringsSize = 2 + 2 + name.length;
+        int dailySize = daily != null ? 8 + daily.size() * 34 : 0;
+        int hours = hourly != null ? hourly.getDecodedSize() : 0;
+        int hourlySize = hourly != null ? 8 + hours * 26 : 0;
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + stringsSize
+                + (current != null ? CURRENT_SIZE : 0) + dailySize
+                + hourlySize);
+
+        int stringsOffset = HEADER_SIZE;
+        int currentOffset = current != null
+                ? stringsOffset + stringsSize : MISSING;
+        int dailyOffset = daily != null ? stringsOffset + stringsSize
+                + (current != null ? CURRENT_SIZE : 0) : MISSING;
+        int hourlyOffset = hourly != null
+                ? out.capacity() - hourlySize : MISSING;
+
+        out.putInt(MAGIC).putShort(VERSION).putShort((short) 0)
+                .putLong(fetchedAt)
+                .putDouble(coordinates[0]).putDouble(coordinates[1])
+                .putInt(stringsOffset).putInt(currentOffset)
+                .putInt(dailyOffset).putInt(hourlyOffset);
+
+        out.putShort((short) 1).putShort((short) name.length).put(name);
+
+        if (current != null) {
+            out.putShort((short) current.getConditionCode())
+                    .putShort((short) 0)
+                    .putInt(current.getHumidityPercent())
+                    .putInt(current.getWindDirectionDegrees())
+                    .putInt(current.getZoneOffset().getTotalSeconds())
+                    .putDouble(current.getTemperatureK())
+                    .putDouble(current.getFeelsLikeK())
+                    .putDouble(current.getWindSpeedMps())
+                    .putLong(current.getSunriseEpochSecond())
+                    .putLong(current.getSunsetEpochSecond());
+        }
+        if (daily != null) {
+            out.putInt(daily.size())
+                    .putInt(daily.getZoneOffset().getTotalSeconds());
+            for (Forecast.ForecastEntry entry : daily) {
+                out.putLong(entry.getEpochSecond());
+            }
+            for (Forecast.ForecastEntry entry : daily) {
+                out.putDouble(entry.getMinTempK());
+            }
+            for (Forecast.ForecastEntry entry : daily) {
+                out.putDouble(entry.getMaxTempK());
+            }
+            for (Forecast.ForecastEntry entry : daily) {
+                out.putDouble(entry.getRain());
+            }
+            for (Forecast.ForecastEntry entry : daily) {
+                out.putShort((short) entry.getConditionCode());
+            }
+        }
+        if (hourly != null) {
+            out.putInt(hours)
+                    .putInt(hourly.getZoneOffset().getTotalSeconds());
+            for (int i = 0; i < hours; i++) {
+                out.putLong(hourly.getNthEntry(i).getEpochSecond());
+            }
+            for (int i = 0; i < hours; i++) {
+                out.putDouble(hourly.getNthEntry(i).getTemperatureK());
+            }
+            for (int i = 0; i < hours; i++) {
+                out.putDouble(hourly.getNthEntry(i).getRain());
+            }
+            for (int i = 0; i < hours; i++) {
+                out.putShort((short) hourly.getNthEntry(i).getConditionCode());
+            }
+        }
+        out.flip();
+
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = parent.resolve(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Opens a snapshot by reading it into memory and checking its header.
+     *
+     * @param path path of the snapshot
+     * @return reader of the snapshot
+     * @throws IOException if reading fails or the file is not a snapshot
+     * of this version
+     */
+    public static SnapshotFile open(Path path) throws IOException {
+        // Not mapped: a mapping would stay until garbage collected and on
+        // Windows keep the next write from moving its file over this one
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a snapshot: " + path);
+            }
+            if (buffer.getShort(4) != VERSION) {
+                throw new IOException("Unsupported snapshot version "
+                        + buffer.getShort(4) + ": " + path);
+            }
+            return new SnapshotFile(buffer, readStrings(buffer,
+                    buffer.getInt(32)));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated snapshot: " + path, e);
+        }
+    }
+
+    /**
+     * Gets the name of the location.
+     *
+     * @return location name
+     */
+    public String getLocation() {
+        return strings[0];
+    }
+
+    /**
+     * Gets the time the data was fetched.
+     *
+     * @return time in epoch milliseconds
+     */
+    public long getFetchedAt() {
+        return buffer.getLong(8);
+    }
+
+    /**
+     * Gets the coordinates of the location.
+     *
+     * @return latitude and longitude
+     */
+    public double[] getCoordinates() {
+        return new double[]{buffer.getDouble(16), buffer.getDouble(24)};
+    }
+
+    /**
+     * Decodes the current weather.
+     *
+     * @return current weather, or null if the snapshot has none
+     * @throws IOException if the section is truncated
+     */
+    public CurrentWeather readCurrentWeather() throws IOException {
+        int at = buffer.getInt(36);
+        if (at == MISSING) {
+            return null;
+        }
+        try {
+            return new CurrentWeather(buffer.getShort(at),
+                    buffer.getDouble(at + 16), buffer.getDouble(at + 24),
+                    buffer.getInt(at + 4), buffer.getDouble(at + 32),
+                    buffer.getInt(at + 8), buffer.getLong(at + 40),
+                    buffer.getLong(at + 48),
+                    ZoneOffset.ofTotalSeconds(buffer.getInt(at + 12)));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated snapshot", e);
+        }
+    }
+
+    /**
+     * Decodes the daily forecast.
+     *
+     * @return daily forecast, or null if the snapshot has none
+     * @throws IOException if the section is truncated
+     */
+    public Forecast readForecast() throws IOException {
+        int at = buffer.getInt(40);
+        if (at == MISSING) {
+            return null;
+        }
+        try {
+            ByteBuffer in = buffer.duplicate();
+            in.position(at);
+            int count = in.getInt();
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds(in.getInt());
+            long[] times = readLongs(in, count);
+            double[] minTemps = readDoubles(in, count);
+            double[] maxTemps = readDoubles(in, count);
+            double[] rains = readDoubles(in, count);
+            short[] codes = readShorts(in, count);
+            return new Forecast(offset, times, minTemps, maxTemps, rains,
+                    codes);
+        } catch (RuntimeException e) {
+            throw new IOException("Truncated snapshot", e);
+        }
+    }
+
+    /**
+     * Decodes the hourly forecast.
+     *
+     * @return hourly forecast, or null if the snapshot has none
+     * @throws IOException if the section is truncated
+     */
+    public HourlyForecast readHourlyForecast() throws IOException {
+        int at = buffer.getInt(44);
+        if (at == MISSING) {
+            return null;
+        }
+        try {
+            ByteBuffer in = buffer.duplicate();
+            in.position(at);
+            int count = in.getInt();
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds(in.getInt());
+            long[] times = readLongs(in, count);
+            double[] temperatures = readDoubles(in, count);
+            double[] rains = readDoubles(in, count);
+            short[] codes = readShorts(in, count);
+            return new HourlyForecast(offset, times, temperatures, rains,
+                    codes);
+        } catch (RuntimeException e) {
+            throw new IOException("Truncated snapshot", e);
+        }
+    }
+
+    /**
+     * Decodes the whole snapshot.
+     *
+     * @return the weather of the location
+     * @throws IOException if a section is truncated
+     */
+    public WeatherSnapshot readWeatherSnapshot() throws IOException {
+        return new WeatherSnapshot(getLocation(), getCoordinates(),
+                readCurrentWeather(), readForecast(), readHourlyForecast(),
+                getFetchedAt());
+    }
+
+    /**
+     * Helper method to decode the string table.
+     *
+     * @param buffer the whole file
+     * @param at offset of the table
+     * @return the strings
+     */
+    private static String[] readStrings(ByteBuffer buffer, int at) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(at);
+        String[] strings = new String[in.getShort()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[in.getShort() & 0xFFFF];
+            in.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    /**
+     * Helper method to bulk read a column of longs.
+     *
+     * @param in buffer positioned at the column
+     * @param count number of values
+     * @return the values
+     */
+    private static long[] readLongs(ByteBuffer in, int count) {
+        long[] values = new long[count];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + count * Long.BYTES);
+        return values;
+    }
+
+    /**
+     * Helper method to bulk read a column of doubles.
+     *
+     * @param in buffer positioned at the column
+     * @param count number of values
+     * @return the values
+     */
+    private static double[] readDoubles(ByteBuffer in, int count) {
+        double[] values = new double[count];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + count * Double.BYTES);
+        return values;
+    }
+
+    /**
+     * Helper method to bulk read a column of shorts.
+     *
+     * @param in buffer positioned at the column
+     * @param count number of values
+     * @return the values
+     */
+    private static short[] readShorts(ByteBuffer in, int count) {
+        short[] values = new short[count];
+        in.asShortBuffer().get(values);
+        in.position(in.position() + count * Short.BYTES);
+        return values;
+    }
+}
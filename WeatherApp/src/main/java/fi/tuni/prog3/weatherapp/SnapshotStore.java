@@ -0,0 +1,111 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Keeps the last known weather of every searched location as a
+ * SnapshotFile in a directory, one file per location. On the next start the
+ * weather of a location can be shown from its snapshot right away, before
+ * fresh data has been fetched.
+ *
+ * Names are normalized with Management.formatSearch, so "oulu" and " OULU "
+ * share the same snapshot.
+ *
+ * @author bpelmo
+ */
+public class SnapshotStore {
+
+    // Directory for storing the snapshots
+    private static final String DEFAULT_DIRECTORY = "snapshots";
+
+    private static final String EXTENSION = ".snap";
+
+    private static SnapshotStore shared;
+
+    private final Path directory;
+
+    /**
+     * Builder. Constructs a store keeping its snapshots in the given
+     * directory. The directory is created when the first snapshot is saved.
+     *
+     * @param directory path of the directory
+     */
+    public SnapshotStore(String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * Gets the application wide store, kept in the default directory.
+     *
+     * @return shared store
+     */
+    public static synchronized SnapshotStore getShared() {
+        if (shared == null) {
+            shared = new SnapshotStore(DEFAULT_DIRECTORY);
+        }
+        return shared;
+    }
+
+    /**
+     * Saves the weather of a location, replacing its earlier snapshot.
+     * Saves are made one at a time, as the snapshot file of a location is
+     * written through a temporary file of a fixed name.
+     *
+     * @param snapshot the weather to save
+     * @throws IOException if writing fails
+     */
+    public synchronized void save(WeatherSnapshot snapshot) throws IOException {
+        String location = snapshot.getLocation();
+        SnapshotFile.write(pathOf(location), Management.formatSearch(location),
+                snapshot.getCoordinates(), snapshot.getFetchedAt(),
+                snapshot.getCurrentWeather(), snapshot.getForecast(),
+                snapshot.getHourlyForecast());
+    }
+
+    /**
+     * Opens the snapshot of a location.
+     *
+     * @param location the location name
+     * @return the snapshot, or null if there is none
+     * @throws IOException if the snapshot cannot be read
+     */
+    public SnapshotFile load(String location) throws IOException {
+        Path path = pathOf(location);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        SnapshotFile snapshot = SnapshotFile.open(path);
+        String name = Management.formatSearch(location);
+        if (!snapshot.getLocation().equals(name)) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Helper method to get the file of a location. Characters other than
+     * ASCII letters and digits are written as "_" and their hex code, so
+     * that any name is a valid file name whatever the file system encoding.
+     *
+     * @param location the location name
+     * @return path of the snapshot
+     */
+    private Path pathOf(String location) {
+        String name = Management.formatSearch(location);
+        StringBuilder fileName = new StringBuilder(name.length()
+                + EXTENSION.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9')) {
+                fileName.append(c);
+            } else {
+                fileName.append('_').append(Integer.toHexString(c));
+            }
+        }
+        return directory.resolve(fileName.append(EXTENSION).toString());
+    }
+}
@@ -0,0 +1,125 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import javafx.scene.image.Image;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundImage;
+import javafx.scene.layout.BackgroundPosition;
+import javafx.scene.layout.BackgroundRepeat;
+import javafx.scene.layout.BackgroundSize;
+
+/**
+ * Shared resources of the application's look. The background image is
+ * decoded once, on first use, and the same Background is given to every
+ * node. A Background is immutable, so sharing it is safe.
+ *
+ * The time and memory the decode took and the number of nodes sharing the
+ * result are recorded, so the saving can be reported: without sharing
+ * every node would decode its own copy.
+ *
+ * @author bpelmo
+ */
+public final class Theme {
+
+    /**
+     * Path to the background image file.
+     */
+    private static final String BACKGROUND_IMAGE_PATH = "/images/border.jpg";
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static Theme shared;
+
+    private Background background;
+    private boolean decoded;
+    private long decodeNanos;
+    private long backgroundBytes;
+    private int backgroundUses;
+
+    /**
+     * Gets the application wide theme.
+     *
+     * @return shared theme
+     */
+    public static synchronized Theme getShared() {
+        if (shared == null) {
+            shared = new Theme();
+        }
+        return shared;
+    }
+
+    /**
+     * Gets the background of the application's panes, decoding the image
+     * on the first call.
+     *
+     * @return the background, or null if the image cannot be read
+     */
+    public synchronized Background getBackground() {
+        if (!decoded) {
+            decoded = true;
+            long start = System.nanoTime();
+            background = decodeBackground();
+            decodeNanos = System.nanoTime() - start;
+        }
+        backgroundUses++;
+        return background;
+    }
+
+    /**
+     * Gets the time decoding the background took.
+     *
+     * @return decode time in nanoseconds
+     */
+    public synchronized long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * Gets the memory of the decoded background image, counted as four
+     * bytes per pixel.
+     *
+     * @return size in bytes
+     */
+    public synchronized long getBackgroundBytes() {
+        return backgroundBytes;
+    }
+
+    /**
+     * Gets the number of times the background has been handed out.
+     *
+     * @return number of uses
+     */
+    public synchronized int getBackgroundUses() {
+        return backgroundUses;
+    }
+
+    /**
+     * Helper method to decode the background image.
+     *
+     * @return the background, or null if the image cannot be read
+     */
+    private Background decodeBackground() {
+        try (InputStream is = getClass()
+                .getResourceAsStream(BACKGROUND_IMAGE_PATH)) {
+            if (is == null) {
+                return null;
+            }
+            Image image = new Image(is);
+            if (image.isError()) {
+                return null;
+            }
+            backgroundBytes = (long) (image.getWidth() * image.getHeight())
+                    * BYTES_PER_PIXEL;
+            BackgroundImage backgroundImage = new BackgroundImage(
+                    image,
+                    BackgroundRepeat.NO_REPEAT,
+                    BackgroundRepeat.NO_REPEAT,
+                    BackgroundPosition.CENTER,
+                    BackgroundSize.DEFAULT);
+            return new Background(backgroundImage);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
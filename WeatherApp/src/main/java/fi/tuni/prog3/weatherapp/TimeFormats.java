@@ -0,0 +1,88 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared time handling of the weather models. Times are kept as seconds
+ * since the Unix epoch together with the UTC offset of the location, and
+ * are shown in the local time of the location, not of the computer.
+ * 
+ * DateTimeFormatters are immutable and thread safe, so one formatter per
+ * pattern is created and shared by everyone.
+ * 
+ * @author bpelmo
+ */
+public final class TimeFormats {
+    
+    /**
+     * Pattern of a clock time, e.g. "0540".
+     */
+    public static final String TIME = "HHmm";
+    
+    /**
+     * Pattern of a day of a forecast, e.g. "Tue 30.8".
+     */
+    public static final String DAY = "E d.M";
+    
+    private static final Map<String, DateTimeFormatter> FORMATTERS =
+            new ConcurrentHashMap<>();
+    
+    private TimeFormats() {
+    }
+    
+    /**
+     * Gets the shared formatter of a pattern. Names of days and months are
+     * in English.
+     * 
+     * @param pattern the pattern, see DateTimeFormatter
+     * @return formatter of the pattern
+     */
+    public static DateTimeFormatter get(String pattern) {
+        return FORMATTERS.computeIfAbsent(pattern,
+                p -> DateTimeFormatter.ofPattern(p, Locale.ENGLISH));
+    }
+    
+    /**
+     * Formats a time in the local time of a location.
+     * 
+     * @param epochSecond seconds since the Unix epoch
+     * @param offset UTC offset of the location
+     * @param pattern the pattern, see DateTimeFormatter
+     * @return the formatted time
+     */
+    public static String format(long epochSecond, ZoneOffset offset,
+            String pattern) {
+        return get(pattern).format(
+                LocalDateTime.ofEpochSecond(epochSecond, 0, offset));
+    }
+    
+    /**
+     * Gets the local date of a time at a location.
+     * 
+     * @param epochSecond seconds since the Unix epoch
+     * @param offset UTC offset of the location
+     * @return the local date
+     */
+    public static LocalDate toLocalDate(long epochSecond, ZoneOffset offset) {
+        return LocalDate.ofEpochDay(Math.floorDiv(
+                epochSecond + offset.getTotalSeconds(), 86400L));
+    }
+    
+    /**
+     * Gets the local hour of a time at a location.
+     * 
+     * @param epochSecond seconds since the Unix epoch
+     * @param offset UTC offset of the location
+     * @return hour of the day, 0-23
+     */
+    public static int hourOfDay(long epochSecond, ZoneOffset offset) {
+        return (int) (Math.floorMod(epochSecond + offset.getTotalSeconds(),
+                86400L) / 3600);
+    }
+}
@@ -0,0 +1,91 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket holding a budget of requests for a period. The bucket starts
+ * full and refills continuously, so at most the capacity is spent in a burst
+ * and on average no more than the capacity per period.
+ * 
+ * @author bpelmo
+ */
+public class TokenBucket {
+    
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+    
+    /**
+     * Builder. Constructs a full bucket.
+     * 
+     * @param capacity number of requests allowed per period
+     * @param period length of the period
+     * @param unit unit of the period
+     */
+    public TokenBucket(long capacity, long period, TimeUnit unit) {
+        this.capacity = capacity;
+        this.tokensPerNano = (double) capacity / unit.toNanos(period);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+    
+    /**
+     * Takes a token if one is available.
+     * 
+     * @return true if a token was taken
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+    
+    /**
+     * Takes a token, going into debt if the bucket is empty. The caller
+     * must wait for the returned time before using the token, which keeps
+     * waiting callers in order.
+     * 
+     * @return time in nanoseconds to wait before the token may be used
+     */
+    public synchronized long reserve() {
+        refill();
+        tokens--;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / tokensPerNano);
+    }
+    
+    /**
+     * Gets the number of whole tokens currently available.
+     * 
+     * @return available tokens
+     */
+    public synchronized long available() {
+        refill();
+        return Math.max(0, (long) Math.floor(tokens));
+    }
+    
+    /**
+     * Gets the number of requests allowed per period.
+     * 
+     * @return capacity of the bucket
+     */
+    public long getCapacity() {
+        return (long) capacity;
+    }
+    
+    /**
+     * Helper method to add the tokens earned since the last refill.
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity,
+                tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,122 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small in-memory cache whose entries expire after a fixed time to live.
+ * The cache holds at most a fixed number of entries; when it is full the
+ * least recently used entry is evicted. Hits and misses are counted.
+ * 
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ * 
+ * @author bpelmo
+ */
+public class TtlCache<K, V> {
+    
+    private final long ttlNanos;
+    private final Map<K, CacheEntry<V>> entries;
+    private long hits;
+    private long misses;
+    
+    /**
+     * A cached value with its expiry time.
+     */
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long expires;
+
+        private CacheEntry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+    
+    /**
+     * Builder. Constructs an empty cache.
+     * 
+     * @param ttl how long an entry stays valid
+     * @param unit unit of the time to live
+     * @param maxEntries maximum number of entries
+     */
+    public TtlCache(long ttl, TimeUnit unit, int maxEntries) {
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f,
+                true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+    
+    /**
+     * Gets a value from the cache.
+     * 
+     * @param key the key
+     * @return the value, or null if it is missing or has expired
+     */
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.expires - System.nanoTime() < 0) {
+            entries.remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+    
+    /**
+     * Stores a value in the cache.
+     * 
+     * @param key the key
+     * @param value the value
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new CacheEntry<>(value,
+                System.nanoTime() + ttlNanos));
+    }
+    
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+    
+    /**
+     * Gets the number of entries in the cache, including expired ones
+     * that have not been accessed since they expired.
+     * 
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Gets the number of lookups that found a valid entry.
+     * 
+     * @return hit count
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    
+    /**
+     * Gets the number of lookups that found no valid entry.
+     * 
+     * @return miss count
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+}
@@ -0,0 +1,45 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.awt.image.BufferedImage;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Background;
+
+/**
+ * Resources shared by the views of the application: icons, the default
+ * image and the background. The views receive a context when they are
+ * built instead of reaching the resources through the application, so a
+ * stand-in context can be given to them e.g. when they are tested.
+ */
+public interface UiContext {
+
+    /**
+     * Returns an icon scaled to a square of the given size.
+     * @param path resource path of the icon
+     * @param size width and height in pixels
+     * @return the image, or null if it cannot be read
+     */
+    public Image getIcon(String path, int size);
+
+    /**
+     * Returns an icon scaled to a square of the given size for drawing
+     * with AWT.
+     * @param path resource path of the icon
+     * @param size width and height in pixels
+     * @return the image, or null if it cannot be read
+     */
+    public BufferedImage getBufferedIcon(String path, int size);
+
+    /**
+     * Returns a new view of the image shown when a weather icon is
+     * missing.
+     * @return image view
+     */
+    public ImageView getDefaultImage();
+
+    /**
+     * Returns the background of the application's panes.
+     * @return the background, or null if it cannot be read
+     */
+    public Background getBackground();
+}
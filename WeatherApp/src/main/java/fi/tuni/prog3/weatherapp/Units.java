@@ -0,0 +1,221 @@
+package fi.tuni.prog3.weatherapp;
+
+/**
+ * Units used to display the weather. The models keep their values in SI
+ * units (temperatures in Kelvin, wind speeds in metres per second) and the
+ * units convert them only when they are shown, so switching the unit does
+ * not need new data.
+ *
+ * The displayed values are whole numbers, so every unit keeps a table of
+ * the strings for the range of values that can occur and formatting a
+ * value is a table lookup instead of a call to String.format.
+ *
+ * @author bpelmo
+ */
+public final class Units {
+
+    // Range of whole numbers that have a precomputed string
+    private static final int TABLE_MIN = -200;
+    private static final int TABLE_MAX = 600;
+
+    /**
+     * Units of temperature.
+     */
+    public enum Temperature {
+        CELSIUS("°C", "°C", 1.0, -273.15),
+        FAHRENHEIT("°F", "°F", 1.8, -459.67),
+        KELVIN("K", " K", 1.0, 0.0);
+
+        private final String symbol;
+        private final String suffix;
+        private final double scale;
+        private final double offset;
+        private final String[] values;
+        private final String[] valuesWithSymbol;
+
+        /**
+         * Builder. Constructs a unit and its string tables.
+         *
+         * @param symbol symbol of the unit
+         * @param suffix text appended to a value to show the unit
+         * @param scale multiplier from Kelvin
+         * @param offset value added after the multiplication
+         */
+        Temperature(String symbol, String suffix, double scale,
+                double offset) {
+            this.symbol = symbol;
+            this.suffix = suffix;
+            this.scale = scale;
+            this.offset = offset;
+            this.values = numberTable();
+            this.valuesWithSymbol = suffixTable(values, suffix);
+        }
+
+        /**
+         * Converts a temperature from Kelvin to this unit.
+         *
+         * @param kelvin temperature in Kelvin
+         * @return temperature in this unit
+         */
+        public double convert(double kelvin) {
+            return kelvin * scale + offset;
+        }
+
+        /**
+         * Formats a temperature as a whole number in this unit.
+         *
+         * @param kelvin temperature in Kelvin
+         * @return the rounded temperature, e.g. "12"
+         */
+        public String format(double kelvin) {
+            return lookUp(values, Math.round(convert(kelvin)), "");
+        }
+
+        /**
+         * Formats a temperature as a whole number followed by the symbol.
+         *
+         * @param kelvin temperature in Kelvin
+         * @return the rounded temperature, e.g. "12°C"
+         */
+        public String formatWithSymbol(double kelvin) {
+            long value = Math.round(convert(kelvin));
+            return lookUp(valuesWithSymbol, value, suffix);
+        }
+
+        /**
+         * Gets the symbol of the unit.
+         *
+         * @return symbol
+         */
+        public String getSymbol() {
+            return symbol;
+        }
+
+        @Override
+        public String toString() {
+            return symbol;
+        }
+    }
+
+    /**
+     * Units of wind speed.
+     */
+    public enum Speed {
+        METERS_PER_SECOND("m/s", 1.0),
+        KILOMETERS_PER_HOUR("km/h", 3.6),
+        KNOTS("kn", 3600.0 / 1852.0);
+
+        private final String symbol;
+        private final String suffix;
+        private final double scale;
+        private final String[] values;
+        private final String[] valuesWithSymbol;
+
+        /**
+         * Builder. Constructs a unit and its string tables.
+         *
+         * @param symbol symbol of the unit
+         * @param scale multiplier from metres per second
+         */
+        Speed(String symbol, double scale) {
+            this.symbol = symbol;
+            this.suffix = " " + symbol;
+            this.scale = scale;
+            this.values = numberTable();
+            this.valuesWithSymbol = suffixTable(values, suffix);
+        }
+
+        /**
+         * Converts a speed from metres per second to this unit.
+         *
+         * @param metersPerSecond speed in metres per second
+         * @return speed in this unit
+         */
+        public double convert(double metersPerSecond) {
+            return metersPerSecond * scale;
+        }
+
+        /**
+         * Formats a speed as a whole number in this unit.
+         *
+         * @param metersPerSecond speed in metres per second
+         * @return the rounded speed, e.g. "5"
+         */
+        public String format(double metersPerSecond) {
+            return lookUp(values, Math.round(convert(metersPerSecond)), "");
+        }
+
+        /**
+         * Formats a speed as a whole number followed by the symbol.
+         *
+         * @param metersPerSecond speed in metres per second
+         * @return the rounded speed, e.g. "5 m/s"
+         */
+        public String formatWithSymbol(double metersPerSecond) {
+            long value = Math.round(convert(metersPerSecond));
+            return lookUp(valuesWithSymbol, value, suffix);
+        }
+
+        /**
+         * Gets the symbol of the unit.
+         *
+         * @return symbol
+         */
+        public String getSymbol() {
+            return symbol;
+        }
+
+        @Override
+        public String toString() {
+            return symbol;
+        }
+    }
+
+    private Units() {
+    }
+
+    /**
+     * Helper method to build the strings of the whole numbers in the table
+     * range.
+     *
+     * @return table indexed by value - TABLE_MIN
+     */
+    private static String[] numberTable() {
+        String[] table = new String[TABLE_MAX - TABLE_MIN + 1];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = Integer.toString(TABLE_MIN + i);
+        }
+        return table;
+    }
+
+    /**
+     * Helper method to build a table of numbers followed by a suffix.
+     *
+     * @param numbers the number table
+     * @param suffix text appended to every number
+     * @return table indexed by value - TABLE_MIN
+     */
+    private static String[] suffixTable(String[] numbers, String suffix) {
+        String[] table = new String[numbers.length];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = numbers[i] + suffix;
+        }
+        return table;
+    }
+
+    /**
+     * Helper method to get the string of a value from a table. Values
+     * outside the table are formatted on the fly.
+     *
+     * @param table the table
+     * @param value the rounded value
+     * @param suffix suffix of the table's strings
+     * @return string of the value
+     */
+    private static String lookUp(String[] table, long value, String suffix) {
+        if (value >= TABLE_MIN && value <= TABLE_MAX) {
+            return table[(int) value - TABLE_MIN];
+        }
+        return value + suffix;
+    }
+}
@@ -0,0 +1,44 @@
+package fi.tuni.prog3.weatherapp;
+
+/**
+ * Thrown when the weather API cannot serve a request: the server answered
+ * with an error status, or the request was not sent at all because the
+ * request budget is spent or the circuit breaker is open.
+ * 
+ * @author bpelmo
+ */
+public class WeatherApiException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final int statusCode;
+    
+    /**
+     * Builder. Constructs an exception for an error response.
+     * 
+     * @param statusCode HTTP status code of the response
+     */
+    public WeatherApiException(int statusCode) {
+        super("HttpResponseCode: " + statusCode);
+        this.statusCode = statusCode;
+    }
+    
+    /**
+     * Builder. Constructs an exception for a request that was not sent.
+     * 
+     * @param message reason the request was not sent
+     */
+    public WeatherApiException(String message) {
+        super(message);
+        this.statusCode = 0;
+    }
+    
+    /**
+     * Gets the HTTP status code of the response.
+     * 
+     * @return status code, or 0 if no request was sent
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -1,12 +1,12 @@
 package fi.tuni.prog3.weatherapp;
 
 import java.io.IOException;
-import java.io.InputStream;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.util.Duration;
 import javafx.scene.control.Button;
@@ -22,6 +22,11 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.animation.KeyFrame;
@@ -36,10 +41,6 @@ import javafx.scene.control.ListView;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
 import javafx.scene.layout.Background;
-import javafx.scene.layout.BackgroundImage;
-import javafx.scene.layout.BackgroundPosition;
-import javafx.scene.layout.BackgroundRepeat;
-import javafx.scene.layout.BackgroundSize;
 import javafx.stage.Modality;
 import javafx.embed.swing.SwingNode;
 
@@ -52,27 +53,15 @@ public class WeatherApp extends Application {
     
     
     /**
-     * Current coordinates of the searched location.
+     * Weather data of the searched location.
      */
-    public static double[] CURRENT_COORDINATES;
-    /**
-     * Current weather data.
-     */
-    public static CurrentWeather CURRENT_WEATHER;
-    /**
-     * Forecast data for the next 14 days.
-     */
-    public static Forecast FORECAST;
-    /**
-     * Hourly forecast data for the next 24 hours.
-     */
-    public static HourlyForecast HOURLY_FORECAST;
+    private final WeatherStore weatherStore = new WeatherStore();
      
     /**
      * Panels and Labels
      */
-    private ForecastBox[] forecastPanels;
-    private HourForecastBox[] hourForecastBoxes;
+    private ForecastStrip<Forecast.ForecastEntry> dailyStrip;
+    private ForecastStrip<HourlyForecast.HourlyForecastEntry> hourlyStrip;
     private Label temperatureLabel;
     private Label windSpeedLabel;
     private Label windDirectionLabel;
@@ -83,8 +72,6 @@ public class WeatherApp extends Application {
     private Label favoritesLabel;
     private Label twoWeekTitleLabel;
     private Label lastSearchLabel;
-    private int FORECAST_DAYS = 14;
-    private int FORECAST_HOURS = 24;
     
     private ComboBox<String> searchHistoryButton;
     private List<String> searchHistory = new ArrayList<>();
@@ -98,17 +85,39 @@ public class WeatherApp extends Application {
     private String lastSearch; 
     private final String lastSearchFilePath = "last_search.txt";
     private final String searchHistoryFilePath = "search_history.txt";
-   
-    /**
-    * Path to the background image file.
-    */
-    private String BackgroundImagePath = "/images/border.jpg";
         
     private Stage popupStage;
     private ListView<String> favoritesListView;
     private ObservableList<String> favoritesList;
     
-    private OpenWeatherAPI openWeatherAPI;
+    /**
+    * System property that makes searches use the One Call endpoint, which
+    * returns all weather of a location in one request.
+    */
+    private static final String ONE_CALL_PROPERTY = "weatherapp.oneCall";
+    
+    // Size of the current weather icon in pixels
+    private static final int WEATHER_ICON_SIZE = 125;
+    
+    // How long closing the application waits for snapshots to be written
+    private static final long SNAPSHOT_WRITE_TIMEOUT_SECONDS = 2;
+    
+    private AsyncWeatherAPI weatherAPI;
+    private UiContext uiContext;
+    private SearchExecutor searchExecutor;
+    private SnapshotStore snapshotStore;
+    private ExecutorService snapshotWriter;
+    private Executor parseExecutor;
+    
+    private Units.Temperature temperatureUnit = Units.Temperature.CELSIUS;
+    private Units.Speed speedUnit = Units.Speed.METERS_PER_SECOND;
+    
+    // What is on screen now, used to update only what has changed
+    private WeatherSnapshot renderedSnapshot;
+    private int renderedIconSlot = -1;
+    private boolean renderScheduled;
+    // Hourly forecast whose remaining hours are being decoded, if any
+    private HourlyForecast decodingHours;
     
      /**
      * Start method of this class, initializes alot of different things
@@ -116,13 +125,29 @@ public class WeatherApp extends Application {
      */
     @Override
     public void start(Stage stage) {
+        long startTime = System.nanoTime();
+        uiContext = new DefaultUiContext();
         searchHistoryButton = new ComboBox<>();
         temperatureLabel = new Label("");
         feelsLikeLabel = new Label("");
         favoritesLabel = new Label("");
         windSpeedLabel = new Label("");
         windDirectionLabel = new Label("");
-        openWeatherAPI = new OpenWeatherAPI(); 
+        parseExecutor = AsyncOpenWeatherAPI.newParseExecutor();
+        weatherAPI = new CachingWeatherAPI(Boolean.getBoolean(ONE_CALL_PROPERTY)
+                ? new OneCallWeatherAPI(HttpTransport.getShared(),
+                        parseExecutor, GeocodingCache.getShared())
+                : new AsyncOpenWeatherAPI(HttpTransport.getShared(),
+                        parseExecutor, GeocodingCache.getShared()));
+        searchExecutor = new SearchExecutor(2);
+        snapshotStore = SnapshotStore.getShared();
+        snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        IconCache.getShared().preload(WEATHER_ICON_SIZE,
+                ForecastBox.ICON_SIZE, HourForecastBox.ICON_SIZE);
         favoritesManager = new Favorites();
         management = new Management();
         
@@ -149,6 +174,7 @@ public class WeatherApp extends Application {
         HBox searchPane = getSearchPane();
         BorderPane.setAlignment(searchPane, Pos.TOP_RIGHT);
         topPane.setRight(searchPane);
+        topPane.setLeft(getUnitPane());
 
         root.setTop(topPane);
         root.setBottom(getQuitButton());
@@ -164,6 +190,64 @@ public class WeatherApp extends Application {
         stage.setScene(scene);
         stage.setTitle("WeatherApp");
         stage.show();        
+        logStartup(startTime);
+    }
+    
+    /**
+    * Logs how long starting took, the heap still in use after a garbage
+    * collection and what sharing the decoded background saved compared to
+    * decoding it for every node.
+    *
+    * @param startTime System.nanoTime() at the beginning of start
+    */
+    private void logStartup(long startTime) {
+        long startupMillis = (System.nanoTime() - startTime) / 1_000_000;
+        Theme theme = Theme.getShared();
+        int savedDecodes = Math.max(theme.getBackgroundUses() - 1, 0);
+        Logger.getLogger(WeatherApp.class.getName()).log(Level.INFO,
+                "Started in {0} ms with {1} KB of heap in use, background"
+                + " shared by {2} nodes, saving about {3} ms and {4} KB of"
+                + " decoding",
+                new Object[]{startupMillis, usedHeapAfterGc() / 1024,
+                        theme.getBackgroundUses(),
+                        savedDecodes * theme.getDecodeNanos() / 1_000_000,
+                        savedDecodes * theme.getBackgroundBytes() / 1024});
+    }
+    
+    /**
+    * Gets the heap in use after a garbage collection, i.e. roughly the
+    * memory retained by live objects.
+    *
+    * @return used heap in bytes
+    */
+    static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    /**
+    * Cancels any search in flight when the application is closed. The
+    * snapshots waiting to be written are given a moment to finish, as the
+    * writer is a daemon thread and would otherwise die with the JVM.
+    */
+    @Override
+    public void stop() {
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+        }
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdown();
+            try {
+                if (!snapshotWriter.awaitTermination(
+                        SNAPSHOT_WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    Logger.getLogger(WeatherApp.class.getName()).log(
+                            Level.WARNING, "Snapshot not saved on exit");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
     
     /**
@@ -208,10 +292,11 @@ public class WeatherApp extends Application {
         mapVBox.setSpacing(5);
         mapVBox.setAlignment(Pos.CENTER);
 
+        WeatherMap weatherMap = new WeatherMap(weatherAPI, uiContext);
         SwingNode swingNode = new SwingNode();
-        swingNode.setContent(new WeatherMap(openWeatherAPI));
+        swingNode.setContent(weatherMap);
 
-        mapVBox.getChildren().add(swingNode);
+        mapVBox.getChildren().addAll(getMapDayBox(weatherMap), swingNode);
         
         ScrollPane scrollPane = new ScrollPane();
         scrollPane.setContent(mapVBox);
@@ -221,6 +306,31 @@ public class WeatherApp extends Application {
         return scrollPane;
     }   
     
+    /**
+    * Creates the selector of the day shown on the weather map. Choosing
+    * a day swaps the map's overlay; the map itself is not reloaded.
+    *
+    * @param weatherMap the map the day is chosen for
+    * @return ComboBox The day selector.
+    */
+    private ComboBox<String> getMapDayBox(WeatherMap weatherMap) {
+        ObservableList<String> days = FXCollections.observableArrayList(
+                "Today", "Tomorrow");
+        for (int n = days.size(); n < weatherMap.getForecastLength(); n++) {
+            days.add("In " + n + " days");
+        }
+        ComboBox<String> dayBox = new ComboBox<>(days);
+        dayBox.getSelectionModel().select(weatherMap.getDay());
+        dayBox.setOnAction(e -> {
+            int n = dayBox.getSelectionModel().getSelectedIndex();
+            // The loaded forecasts may be shorter than requested
+            if (n >= 0 && n < weatherMap.getForecastLength()) {
+                weatherMap.showDay(n);
+            }
+        });
+        return dayBox;
+    }
+    
     /**
     * Creates the top part of the VBox layout with weather 
     * images and primary weather indicators.
@@ -288,27 +398,31 @@ public class WeatherApp extends Application {
     }
     
     /**
-    * Retrieves a weather icon based on the current weather description.
+    * Retrieves a weather icon based on the current weather condition.
     *
     * @return ImageView An image view containing the appropriate weather icon.
     */
     public ImageView getWeatherImage() {
-        String weatherDescription = (CURRENT_WEATHER 
-                != null) ? CURRENT_WEATHER.getDescription() : "default";
-        String imagePath = "/images/" + 
-                weatherDescription.toLowerCase() + ".png";
-        try (InputStream imageStream = getClass()
-                .getResourceAsStream(imagePath)) {
-            if (imageStream != null) {
-                Image image = new Image(imageStream);
-                ImageView imageView = new ImageView(image);
-                imageView.setFitWidth(125);
-                imageView.setFitHeight(125);
-                return imageView;
-            } else {
-                return getDefaultImage();
-            }
-        } catch (IOException e) {
+        WeatherSnapshot snapshot = weatherStore.get();
+        return getWeatherImage(snapshot != null
+                ? snapshot.getCurrentWeather() : null);
+    }
+    
+    /**
+    * Retrieves a weather icon based on the given weather condition.
+    *
+    * @param currentWeather The weather to show, or null for the default.
+    * @return ImageView An image view containing the appropriate weather icon.
+    */
+    private ImageView getWeatherImage(CurrentWeather currentWeather) {
+        int iconSlot = (currentWeather != null) ? WeatherCondition
+                .getIconSlot(currentWeather.getConditionCode())
+                : WeatherCondition.DEFAULT_ICON;
+        Image image = uiContext.getIcon(
+                WeatherCondition.getIconPath(iconSlot), WEATHER_ICON_SIZE);
+        if (image != null) {
+            return new ImageView(image);
+        } else {
             return getDefaultImage();
         }
     }
@@ -321,12 +435,7 @@ public class WeatherApp extends Application {
     * no specific weather icon is available.
     */
     public ImageView getDefaultImage() {
-        Image defaultImage = new Image(getClass().
-                getResourceAsStream("/images/default.png"));
-        ImageView defaultImageView = new ImageView(defaultImage);
-        defaultImageView.setFitWidth(50);
-        defaultImageView.setFitHeight(50);
-        return defaultImageView;
+        return uiContext.getDefaultImage();
     }
 
     /**
@@ -345,32 +454,21 @@ public class WeatherApp extends Application {
         hourlyLabel.setStyle("-fx-font-size: 25px;-fx-font-weight: bold;");
         hourlyLabel.setText("Hourly forecast");
         
-        HBox bottomHBox = new HBox();
-        bottomHBox.setSpacing(1);
-        bottomHBox.setBackground(createBackgroundFromImage());
-        
-        hourForecastBoxes = new HourForecastBox[FORECAST_HOURS];
-               
-        for (int i = 0; i < FORECAST_HOURS; i++) {
-            hourForecastBoxes[i] = new HourForecastBox();
-            bottomHBox.getChildren().add(hourForecastBoxes[i]
-                    .getHourForecastBox());
-        }
-                
-        ScrollPane scrollPane = new ScrollPane();
-        scrollPane.setContent(bottomHBox);
-        scrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.ALWAYS);
-        scrollPane.setFitToWidth(true);
-        bottomVBox.getChildren().addAll(hourlyLabel, scrollPane);
+        // Only the visible hours have a box, reused while scrolling
+        hourlyStrip = new ForecastStrip<>(
+                () -> new HourForecastBox(uiContext),
+                HourlyForecast.HourlyForecastEntry::sameAs, 51, 150);
+        hourlyStrip.setOnNearEnd(this::decodeMoreHours);
+        bottomVBox.getChildren().addAll(hourlyLabel, hourlyStrip.getNode());
         
         return bottomVBox;
     }
 
     /**
     * Constructs the middle part of the VBox layout 
-    * containing the 14-day forecast.
+    * containing the daily forecast.
     *
-    * @return VBox The middle VBox containing the 14-day forecast scroll pane.
+    * @return VBox The middle VBox containing the daily forecast strip.
     */
     private VBox getMiddleVBox() {
         
@@ -387,23 +485,11 @@ public class WeatherApp extends Application {
         twoWeekTitleLabel.setStyle("-fx-font-size: 25px; "
                 + "-fx-font-weight: bold; -fx-font-family: SansSerif;");
         
-        HBox middleHBox = new HBox();
-        middleHBox.setSpacing(10);
-        middleHBox.setBackground(createBackgroundFromImage());
-        
-        forecastPanels = new ForecastBox[FORECAST_DAYS];
-               
-        for (int i = 0; i < FORECAST_DAYS; i++) {
-            forecastPanels[i] = new ForecastBox();
-            middleHBox.getChildren().add(forecastPanels[i].getForecastPanel());
-        }
-                
-        ScrollPane scrollPane = new ScrollPane();
-        scrollPane.setContent(middleHBox);
-        scrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.ALWAYS);
-        scrollPane.setFitToWidth(true);
-        scrollPane.setBackground(createBackgroundFromImage());
-        middleVBox.getChildren().addAll(twoWeekTitleLabel, scrollPane);
+        // Only the visible days have a box, reused while scrolling
+        dailyStrip = new ForecastStrip<>(() -> new ForecastBox(uiContext),
+                Forecast.ForecastEntry::sameAs, 117, 170);
+        middleVBox.getChildren().addAll(twoWeekTitleLabel,
+                dailyStrip.getNode());
         
         return middleVBox;
     }
@@ -424,6 +510,36 @@ public class WeatherApp extends Application {
         return button;
     }
 
+    /**
+    * Constructs the pane with the selectors of the temperature and wind
+    * speed units. Changing a unit redraws the weather with the new unit.
+    *
+    * @return HBox The pane containing the unit selectors.
+    */
+    private HBox getUnitPane() {
+        HBox unitPane = new HBox(10);
+        unitPane.setAlignment(Pos.CENTER_LEFT);
+
+        ComboBox<Units.Temperature> temperatureBox = new ComboBox<>(
+                FXCollections.observableArrayList(Units.Temperature.values()));
+        temperatureBox.setValue(temperatureUnit);
+        temperatureBox.setOnAction(e -> {
+            temperatureUnit = temperatureBox.getValue();
+            requestRender();
+        });
+
+        ComboBox<Units.Speed> speedBox = new ComboBox<>(
+                FXCollections.observableArrayList(Units.Speed.values()));
+        speedBox.setValue(speedUnit);
+        speedBox.setOnAction(e -> {
+            speedUnit = speedBox.getValue();
+            requestRender();
+        });
+
+        unitPane.getChildren().addAll(temperatureBox, speedBox);
+        return unitPane;
+    }
+
     /**
     * Constructs and sets up the search pane including
     * the search text field and buttons.
@@ -514,22 +630,30 @@ public class WeatherApp extends Application {
     }
  
     /**
-    * Updates the label texts based on the current weather data.
+    * Updates the label texts based on the current weather data. Labels
+    * ignore texts equal to their current one, and the wind arrow is only
+    * turned, not reloaded, once it exists.
     *
     * @param currentWeather The current weather data.
     * @param location The location for which the weather data is displayed.
     */
     private void setLabelTexts(CurrentWeather currentWeather, String location) {
-        temperatureLabel.setText("" + currentWeather.getTemperatureC());
-        windSpeedLabel.setText("Wind Speed: " + currentWeather.
-                getWindSpeed() + " m/s");
-        feelsLikeLabel.setText("Feels like: " + currentWeather.getFeelsLikeC());
+        temperatureLabel.setText(temperatureUnit.formatWithSymbol(
+                currentWeather.getTemperatureK()));
+        windSpeedLabel.setText("Wind Speed: " + speedUnit.formatWithSymbol(
+                currentWeather.getWindSpeedMps()));
+        feelsLikeLabel.setText("Feels like: " + temperatureUnit
+                .formatWithSymbol(currentWeather.getFeelsLikeK()));
         descriptionLabel.setText(currentWeather.getDescription());
         lastSearchLabel.setText(location);
         
         String windDirection = currentWeather.getWindDirection();
-        ImageView arrowImageView = createArrowImageView(windDirection);
-        windDirectionLabel.setGraphic(arrowImageView);
+        Node arrow = windDirectionLabel.getGraphic();
+        if (arrow != null) {
+            arrow.setRotate(calculateAngleFromDirection(windDirection));
+        } else {
+            windDirectionLabel.setGraphic(createArrowImageView(windDirection));
+        }
     }
    
     /**
@@ -540,21 +664,15 @@ public class WeatherApp extends Application {
     * to indicate wind direction.
     */
     private ImageView createArrowImageView(String windDirection) {
-        try (InputStream imageStream = getClass().
-                getResourceAsStream("/images/wind_arrow.png")) {
-            if (imageStream!= null) {
-                Image arrowImage = new Image(imageStream);
-                ImageView arrowImageView = new ImageView(arrowImage);
-                arrowImageView.setFitWidth(100); 
-                arrowImageView.setFitHeight(100);
-
-                double angle = calculateAngleFromDirection(windDirection);
-                arrowImageView.setRotate(angle);
-
-                return arrowImageView;
-            }
-        } catch (IOException e) {
-        }      
+        Image arrowImage = uiContext.getIcon("/images/wind_arrow.png", 100);
+        if (arrowImage != null) {
+            ImageView arrowImageView = new ImageView(arrowImage);
+
+            double angle = calculateAngleFromDirection(windDirection);
+            arrowImageView.setRotate(angle);
+
+            return arrowImageView;
+        }
         return null;
     }
     
@@ -575,18 +693,16 @@ public class WeatherApp extends Application {
     
     /**
     * Loads the last search from storage and updates the view accordingly.
+    * The last known weather of the location is shown from its snapshot
+    * right away while fresh data is fetched.
     */
     private void loadLastSearch() {
         String location = management.loadLastSearch();
         if (location != null && !location.isEmpty()) {
-            CURRENT_COORDINATES = openWeatherAPI.lookUpLocation(location);
-            if (CURRENT_COORDINATES == null) {
-                setDefaultView("Enter a search");
-                return;
+            WeatherSnapshot snapshot = loadSnapshot(location);
+            if (snapshot != null) {
+                showSearchResult(snapshot);
             }
-            CURRENT_WEATHER = new CurrentWeather(openWeatherAPI
-                    .getCurrentWeather(CURRENT_COORDINATES));
-            setLabelTexts(CURRENT_WEATHER, location);
             performSearch(location);
         } else {
             setDefaultView("Please enter a location to see weather data.");
@@ -603,69 +719,211 @@ public class WeatherApp extends Application {
     }
     
     /**
-    * Initiates a weather data search for a specific location.
+    * Initiates a weather data search for a specific location. The search
+    * runs in the background and cancels any search still in flight; the
+    * view is updated once the data has arrived.
     *
     * @param location The location string to search for.
     */
     private void performSearch(String location) {
         if (location != null && !location.isEmpty()) {
             String formattedLocation = Management.formatSearch(location);
-            CURRENT_COORDINATES = openWeatherAPI.lookUpLocation
-        (formattedLocation);
-
-            if (CURRENT_COORDINATES == null) {
-                lastSearch = "Unknown location";
-                saveLastSearch(lastSearch);
-                setDefaultView("Unknown location.");
-                return; 
-            }
+            searchExecutor.submit(() -> fetchWeather(formattedLocation),
+                    this::showSearchResult,
+                    error -> setDefaultView("Weather data unavailable."));
+        }
+    }
+    
+    /**
+    * Fetches all weather data for a location. Runs on a search thread.
+    *
+    * @param location The formatted location to search for.
+    * @return WeatherSnapshot The fetched data, or null if the location
+    * was not found.
+    * @throws Exception If a request fails or the search is cancelled.
+    */
+    private WeatherSnapshot fetchWeather(String location) throws Exception {
+        double[] coordinates = SearchExecutor.await(
+                weatherAPI.lookUpLocation(location));
+        if (coordinates == null) {
+            return null;
+        }
 
-            CURRENT_WEATHER = new CurrentWeather(openWeatherAPI
-                    .getCurrentWeather(CURRENT_COORDINATES));
-            FORECAST = new Forecast(openWeatherAPI.
-                    getDailyForecast(CURRENT_COORDINATES));
-            HOURLY_FORECAST = new HourlyForecast(openWeatherAPI
-                    .getHourlyForecast(CURRENT_COORDINATES));
+        // All three requests are in flight at the same time, so the
+        // search takes as long as the slowest of them.
+        CompletableFuture<CurrentWeather> currentFuture = weatherAPI
+                .getCurrentWeather(coordinates);
+        CompletableFuture<Forecast> forecastFuture = weatherAPI
+                .getDailyForecast(coordinates);
+        CompletableFuture<HourlyForecast> hourlyFuture = weatherAPI
+                .getHourlyForecast(coordinates);
+        SearchExecutor.await(CompletableFuture.allOf(currentFuture,
+                forecastFuture, hourlyFuture));
+        WeatherSnapshot snapshot = new WeatherSnapshot(location, coordinates,
+                currentFuture.join(), forecastFuture.join(),
+                hourlyFuture.join(), System.currentTimeMillis());
+        // Writing the file is kept off the way of showing the result
+        snapshotWriter.execute(() -> saveSnapshot(snapshot));
+        return snapshot;
+    }
+    
+    /**
+    * Saves the weather of a location to disk. A failure is only logged,
+    * the saved snapshot is just a head start for the next launch.
+    *
+    * @param snapshot The weather to save.
+    */
+    private void saveSnapshot(WeatherSnapshot snapshot) {
+        try {
+            snapshotStore.save(snapshot);
+        } catch (IOException e) {
+            Logger.getLogger(WeatherApp.class.getName()).log(Level.WARNING,
+                    "Could not save the snapshot of "
+                    + snapshot.getLocation(), e);
+        }
+    }
+    
+    /**
+    * Loads the last known weather of a location from disk.
+    *
+    * @param location The location to load.
+    * @return WeatherSnapshot The stored data, or null if there is none.
+    */
+    private WeatherSnapshot loadSnapshot(String location) {
+        try {
+            SnapshotFile file = snapshotStore.load(location);
+            return file != null ? file.readWeatherSnapshot() : null;
+        } catch (IOException e) {
+            Logger.getLogger(WeatherApp.class.getName()).log(Level.WARNING,
+                    "Could not load the snapshot of " + location, e);
+            return null;
+        }
+    }
+    
+    /**
+    * Updates the view with the result of a finished search. Runs on the
+    * JavaFX Application Thread.
+    *
+    * @param snapshot The fetched data, or null if the location was not
+    * found.
+    */
+    private void showSearchResult(WeatherSnapshot snapshot) {
+        if (snapshot == null) {
+            lastSearch = "Unknown location";
+            saveLastSearch(lastSearch);
+            setDefaultView("Unknown location.");
+            return; 
+        }
+        if (!weatherStore.publishIfNewer(snapshot)) {
+            return;
+        }
 
-            lastSearch = formattedLocation;
-            saveSearchHistory(formattedLocation);
-            setLabelTexts(CURRENT_WEATHER, formattedLocation);
-            saveLastSearch(formattedLocation);
+        String formattedLocation = snapshot.getLocation();
+        lastSearch = formattedLocation;
+        saveSearchHistory(formattedLocation);
+        saveLastSearch(formattedLocation);
+        requestRender();
+    }
+    
+    /**
+    * Schedules the weather to be shown on the next pulse. Any number of
+    * requests before that, e.g. a search result and a unit change, are
+    * coalesced into a single render. Runs on the JavaFX Application Thread.
+    */
+    private void requestRender() {
+        if (renderScheduled) {
+            return;
+        }
+        renderScheduled = true;
+        Platform.runLater(() -> {
+            renderScheduled = false;
+            renderWeather();
+        });
+    }
+    
+    /**
+    * Shows the current weather data in the selected units. The forecast
+    * strips update only the visible boxes whose entry has changed; a unit
+    * change updates all of them. The snapshot is read once, so everything
+    * shown belongs together.
+    */
+    private void renderWeather() {
+        WeatherSnapshot snapshot = weatherStore.get();
+        if (snapshot == null) {
+            return;
+        }
+        CurrentWeather currentWeather = snapshot.getCurrentWeather();
+        setLabelTexts(currentWeather, snapshot.getLocation());
 
-            ImageView newWeatherImage = getWeatherImage();
+        int iconSlot = WeatherCondition.getIconSlot(
+                currentWeather.getConditionCode());
+        if (iconSlot != renderedIconSlot) {
             HBox row1 = (HBox) temperatureLabel.getParent();
-            row1.getChildren().set(0, newWeatherImage);
-            row1.getChildren().set(1, temperatureLabel);
-
-            if (forecastPanels != null) {
-                int i = 0;
-                for (Forecast.ForecastEntry entry : FORECAST) {
-                    if (i < forecastPanels.length &&
-                            forecastPanels[i] != null) {
-                        forecastPanels[i].updateForecastLabel(entry);
-                    }
-                    i += 1;
-                    if (i == FORECAST_DAYS) {
-                        break;
-                    }
-                }
+            row1.getChildren().set(0, getWeatherImage(currentWeather));
+            renderedIconSlot = iconSlot;
+        }
+
+        if (dailyStrip != null) {
+            Forecast forecast = snapshot.getForecast();
+            twoWeekTitleLabel.setText(forecast.size() + "-day forecast");
+            dailyStrip.setEntries(forecast.getAllEntries(), temperatureUnit);
+        }
+        if (hourlyStrip != null) {
+            HourlyForecast hourly = snapshot.getHourlyForecast();
+            // The hours after the window are decoded only once the strip
+            // is scrolled near its end
+            hourlyStrip.setEntries(decodedHours(hourly), temperatureUnit);
+        }
+        renderedSnapshot = snapshot;
+    }
+    
+    /**
+    * Decodes the rest of the shown hourly forecast on the parse executor
+    * and adds the hours to the strip once they are ready. Called when the
+    * strip is scrolled near the last decoded hour.
+    */
+    private void decodeMoreHours() {
+        WeatherSnapshot snapshot = renderedSnapshot;
+        if (snapshot == null) {
+            return;
+        }
+        HourlyForecast hourly = snapshot.getHourlyForecast();
+        if (hourly.isFullyDecoded() || decodingHours == hourly) {
+            return;
+        }
+        decodingHours = hourly;
+        CompletableFuture.runAsync(hourly::decodeAll, parseExecutor)
+                .whenComplete((ignored, error) -> Platform.runLater(() -> {
+            if (decodingHours == hourly) {
+                decodingHours = null;
             }
-            if (hourForecastBoxes != null) {
-                int i = 0;
-                for (HourlyForecast.HourlyForecastEntry entry 
-                        : HOURLY_FORECAST) {
-                    if (i < hourForecastBoxes.length && 
-                            hourForecastBoxes[i] != null) {
-                        hourForecastBoxes[i].
-                                updateHourlyForecastLabel(entry);
-                    }
-                    i += 1;
-                    if (i == FORECAST_HOURS) {
-                        break;
-                    }
-                }
+            if (error != null) {
+                Logger.getLogger(WeatherApp.class.getName()).log(
+                        Level.WARNING, "Could not decode the hourly forecast",
+                        error);
+            } else if (renderedSnapshot == snapshot) {
+                hourlyStrip.setEntries(decodedHours(hourly),
+                        temperatureUnit);
             }
+        }));
+    }
+    
+    /**
+    * Lists the hours of a forecast that have been decoded, without
+    * decoding more.
+    *
+    * @param hourly the hourly forecast
+    * @return the decoded entries
+    */
+    private static List<HourlyForecast.HourlyForecastEntry> decodedHours(
+            HourlyForecast hourly) {
+        int count = hourly.getDecodedSize();
+        List<HourlyForecast.HourlyForecastEntry> hours =
+                new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hours.add(hourly.getNthEntry(i));
         }
+        return hours;
     }
     
     /**
@@ -815,27 +1073,15 @@ public class WeatherApp extends Application {
     }
     
     /**
-    * Creates a Background object from an image for use as a UI background.
+    * Gets the background image for use as a UI background. The image is
+    * decoded once and the same Background is shared by all nodes through
+    * the UiContext.
     *
-    * @return Background A new Background object based on the specified image.
+    * @return Background The shared background, or null if the image
+    * cannot be read.
     */
     public Background createBackgroundFromImage() {
-    try (InputStream is = getClass().
-            getResourceAsStream(BackgroundImagePath)) {
-        if (is == null) {
-            return null; 
-        }
-        Image image = new Image(is);
-        BackgroundImage backgroundImage = new BackgroundImage(
-                image,
-                BackgroundRepeat.NO_REPEAT,
-                BackgroundRepeat.NO_REPEAT,
-                BackgroundPosition.CENTER,
-                BackgroundSize.DEFAULT);
-        return new Background(backgroundImage);
-    } catch (Exception e) {
-        return null; 
-        }
+        return uiContext.getBackground();
     }
 }
     
\ No newline at end of file
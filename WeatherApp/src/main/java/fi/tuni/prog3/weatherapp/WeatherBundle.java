@@ -0,0 +1,263 @@
+package fi.tuni.prog3.weatherapp;
+
+import com.google.gson.stream.JsonReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * The current weather, hourly forecast and daily forecast of a location as
+ * returned together by the One Call endpoint. The response is streamed once
+ * and split into the three weather models, which are built from the decoded
+ * values and need no further parsing.
+ *
+ * @author bpelmo
+ */
+final class WeatherBundle {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final CurrentWeather currentWeather;
+    private final Forecast forecast;
+    private final HourlyForecast hourlyForecast;
+
+    /**
+     * Builder. Constructs a bundle of the given models.
+     *
+     * @param currentWeather the current weather
+     * @param forecast the daily forecast
+     * @param hourlyForecast the hourly forecast
+     */
+    private WeatherBundle(CurrentWeather currentWeather, Forecast forecast,
+            HourlyForecast hourlyForecast) {
+        this.currentWeather = currentWeather;
+        this.forecast = forecast;
+        this.hourlyForecast = hourlyForecast;
+    }
+
+    /**
+     * Gets the current weather.
+     *
+     * @return current weather
+     */
+    CurrentWeather getCurrentWeather() {
+        return currentWeather;
+    }
+
+    /**
+     * Gets the daily forecast.
+     *
+     * @return daily forecast
+     */
+    Forecast getForecast() {
+        return forecast;
+    }
+
+    /**
+     * Gets the hourly forecast.
+     *
+     * @return hourly forecast
+     */
+    HourlyForecast getHourlyForecast() {
+        return hourlyForecast;
+    }
+
+    /**
+     * Parses a One Call response. Only the fields kept by the models are
+     * decoded, everything else, e.g. "minutely" and "alerts", is skipped.
+     *
+     * @param in reader of the response body
+     * @return the bundle
+     * @throws IOException if reading fails or the JSON is malformed
+     */
+    static WeatherBundle parse(Reader in) throws IOException {
+        ZoneOffset offset = ZoneOffset.UTC;
+        Current current = new Current();
+        Entries hourly = new Entries();
+        Entries daily = new Entries();
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "timezone_offset":
+                        offset = ZoneOffset.ofTotalSeconds(reader.nextInt());
+                        break;
+                    case "current":
+                        current.read(reader);
+                        break;
+                    case "hourly":
+                        hourly.readArray(reader, false);
+                        break;
+                    case "daily":
+                        daily.readArray(reader, true);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        // The offset may come after the data, so the models are built last
+        return new WeatherBundle(
+                new CurrentWeather(current.conditionCode, current.temperature,
+                        current.feelsLike, current.humidity,
+                        current.windSpeed, current.windDirection,
+                        current.sunrise, current.sunset, offset),
+                new Forecast(offset, daily.times(), daily.minTemps(),
+                        daily.maxTemps(), daily.rains(),
+                        daily.conditionCodes()),
+                new HourlyForecast(offset, hourly.times(), hourly.minTemps(),
+                        hourly.rains(), hourly.conditionCodes()));
+    }
+
+    /**
+     * Values of the "current" object.
+     */
+    private static final class Current {
+        private short conditionCode = WeatherCondition.UNKNOWN;
+        private double temperature;
+        private double feelsLike;
+        private int humidity;
+        private double windSpeed;
+        private int windDirection;
+        private long sunrise;
+        private long sunset;
+
+        private void read(JsonReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "temp":
+                        temperature = reader.nextDouble();
+                        break;
+                    case "feels_like":
+                        feelsLike = reader.nextDouble();
+                        break;
+                    case "humidity":
+                        humidity = reader.nextInt();
+                        break;
+                    case "wind_speed":
+                        windSpeed = reader.nextDouble();
+                        break;
+                    case "wind_deg":
+                        windDirection = reader.nextInt();
+                        break;
+                    case "sunrise":
+                        sunrise = reader.nextLong();
+                        break;
+                    case "sunset":
+                        sunset = reader.nextLong();
+                        break;
+                    case "weather":
+                        conditionCode = JsonStreams.readConditionCode(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+    }
+
+    /**
+     * Columns of the entries of the "hourly" or "daily" array. An hourly
+     * entry has a single temperature, which is kept as the minimum.
+     */
+    private static final class Entries {
+        private int size;
+        private long[] times = new long[INITIAL_CAPACITY];
+        private double[] minTemps = new double[INITIAL_CAPACITY];
+        private double[] maxTemps = new double[INITIAL_CAPACITY];
+        private double[] rains = new double[INITIAL_CAPACITY];
+        private short[] conditionCodes = new short[INITIAL_CAPACITY];
+
+        private void readArray(JsonReader reader, boolean daily)
+                throws IOException {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (size == times.length) {
+                    resize(size * 2);
+                }
+                readEntry(reader, daily);
+                size++;
+            }
+            reader.endArray();
+        }
+
+        private void readEntry(JsonReader reader, boolean daily)
+                throws IOException {
+            conditionCodes[size] = WeatherCondition.UNKNOWN;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "dt":
+                        times[size] = reader.nextLong();
+                        break;
+                    case "temp":
+                        if (daily) {
+                            readTemperatures(reader);
+                        } else {
+                            minTemps[size] = reader.nextDouble();
+                        }
+                        break;
+                    case "rain":
+                        rains[size] = JsonStreams.readRain(reader, "1h");
+                        break;
+                    case "weather":
+                        conditionCodes[size] =
+                                JsonStreams.readConditionCode(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        private void readTemperatures(JsonReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "min":
+                        minTemps[size] = reader.nextDouble();
+                        break;
+                    case "max":
+                        maxTemps[size] = reader.nextDouble();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        private void resize(int capacity) {
+            times = Arrays.copyOf(times, capacity);
+            minTemps = Arrays.copyOf(minTemps, capacity);
+            maxTemps = Arrays.copyOf(maxTemps, capacity);
+            rains = Arrays.copyOf(rains, capacity);
+            conditionCodes = Arrays.copyOf(conditionCodes, capacity);
+        }
+
+        private long[] times() {
+            return Arrays.copyOf(times, size);
+        }
+
+        private double[] minTemps() {
+            return Arrays.copyOf(minTemps, size);
+        }
+
+        private double[] maxTemps() {
+            return Arrays.copyOf(maxTemps, size);
+        }
+
+        private double[] rains() {
+            return Arrays.copyOf(rains, size);
+        }
+
+        private short[] conditionCodes() {
+            return Arrays.copyOf(conditionCodes, size);
+        }
+    }
+}
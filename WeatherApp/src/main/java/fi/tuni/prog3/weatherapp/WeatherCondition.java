@@ -0,0 +1,195 @@
+package fi.tuni.prog3.weatherapp;
+
+/**
+ * Table of the OpenWeatherMap weather condition codes (weather[0].id).
+ * Every code maps to its description and to an icon slot, so the models
+ * only need to store the numeric code and looking up an icon is an array
+ * index instead of building a file name from the description and probing
+ * the classpath for it.
+ * 
+ * Most codes have an icon named after their description. All thunderstorm
+ * codes share the thunderstorm icon. The atmosphere codes without an icon
+ * of their own use a related one: "haze" the mist icon, "volcanic ash" the
+ * smoke icon and the sand, dust and squall codes the wind icon. Unknown
+ * codes use the default icon.
+ * 
+ * @author bpelmo
+ */
+public final class WeatherCondition {
+    
+    /**
+     * Code used when the condition is not known.
+     */
+    public static final int UNKNOWN = 0;
+    
+    /**
+     * Icon slot of the default icon.
+     */
+    public static final int DEFAULT_ICON = 0;
+    
+    private static final int MAX_CODE = 1000;
+    
+    private static final String[] ICON_NAMES = {
+        "default", "thunderstorm", "drizzle", "light intensity drizzle",
+        "heavy intensity drizzle", "light intensity drizzle rain",
+        "drizzle rain", "heavy intensity drizzle rain",
+        "shower rain and drizzle", "heavy shower rain and drizzle",
+        "shower drizzle", "rain", "light rain", "moderate rain",
+        "heavy intensity rain", "very heavy rain", "extreme rain",
+        "freezing rain", "light intensity shower rain", "shower rain",
+        "heavy intensity shower rain", "ragged shower rain", "snow",
+        "light snow", "heavy snow", "sleet", "light shower sleet",
+        "shower sleet", "light rain and snow", "rain and snow",
+        "light shower snow", "shower snow", "heavy shower snow", "mist",
+        "smoke", "fog", "wind", "tornado", "clear sky", "few clouds",
+        "scattered clouds", "broken clouds", "overcast clouds"
+    };
+    
+    private static final String[] ICON_PATHS = new String[ICON_NAMES.length];
+    private static final String[] DESCRIPTIONS = new String[MAX_CODE];
+    private static final byte[] ICON_SLOTS = new byte[MAX_CODE];
+    
+    static {
+        for (int slot = 0; slot < ICON_NAMES.length; slot++) {
+            ICON_PATHS[slot] = "/images/" + ICON_NAMES[slot] + ".png";
+        }
+        
+        define(200, "thunderstorm with light rain", "thunderstorm");
+        define(201, "thunderstorm with rain", "thunderstorm");
+        define(202, "thunderstorm with heavy rain", "thunderstorm");
+        define(210, "light thunderstorm", "thunderstorm");
+        define(211, "thunderstorm", "thunderstorm");
+        define(212, "heavy thunderstorm", "thunderstorm");
+        define(221, "ragged thunderstorm", "thunderstorm");
+        define(230, "thunderstorm with light drizzle", "thunderstorm");
+        define(231, "thunderstorm with drizzle", "thunderstorm");
+        define(232, "thunderstorm with heavy drizzle", "thunderstorm");
+        
+        define(300, "light intensity drizzle", "light intensity drizzle");
+        define(301, "drizzle", "drizzle");
+        define(302, "heavy intensity drizzle", "heavy intensity drizzle");
+        define(310, "light intensity drizzle rain",
+                "light intensity drizzle rain");
+        define(311, "drizzle rain", "drizzle rain");
+        define(312, "heavy intensity drizzle rain",
+                "heavy intensity drizzle rain");
+        define(313, "shower rain and drizzle", "shower rain and drizzle");
+        define(314, "heavy shower rain and drizzle",
+                "heavy shower rain and drizzle");
+        define(321, "shower drizzle", "shower drizzle");
+        
+        define(500, "light rain", "light rain");
+        define(501, "moderate rain", "moderate rain");
+        define(502, "heavy intensity rain", "heavy intensity rain");
+        define(503, "very heavy rain", "very heavy rain");
+        define(504, "extreme rain", "extreme rain");
+        define(511, "freezing rain", "freezing rain");
+        define(520, "light intensity shower rain",
+                "light intensity shower rain");
+        define(521, "shower rain", "shower rain");
+        define(522, "heavy intensity shower rain",
+                "heavy intensity shower rain");
+        define(531, "ragged shower rain", "ragged shower rain");
+        
+        define(600, "light snow", "light snow");
+        define(601, "snow", "snow");
+        define(602, "heavy snow", "heavy snow");
+        define(611, "sleet", "sleet");
+        define(612, "light shower sleet", "light shower sleet");
+        define(613, "shower sleet", "shower sleet");
+        define(615, "light rain and snow", "light rain and snow");
+        define(616, "rain and snow", "rain and snow");
+        define(620, "light shower snow", "light shower snow");
+        define(621, "shower snow", "shower snow");
+        define(622, "heavy shower snow", "heavy shower snow");
+        
+        define(701, "mist", "mist");
+        define(711, "smoke", "smoke");
+        define(721, "haze", "mist");
+        define(731, "sand/dust whirls", "wind");
+        define(741, "fog", "fog");
+        define(751, "sand", "wind");
+        define(761, "dust", "wind");
+        define(762, "volcanic ash", "smoke");
+        define(771, "squalls", "wind");
+        define(781, "tornado", "tornado");
+        
+        define(800, "clear sky", "clear sky");
+        define(801, "few clouds", "few clouds");
+        define(802, "scattered clouds", "scattered clouds");
+        define(803, "broken clouds", "broken clouds");
+        define(804, "overcast clouds", "overcast clouds");
+    }
+    
+    private WeatherCondition() {
+    }
+    
+    /**
+     * Gets the description of a condition code.
+     * 
+     * @param code the condition code
+     * @return description, or an empty string for an unknown code
+     */
+    public static String getDescription(int code) {
+        String description = isValid(code) ? DESCRIPTIONS[code] : null;
+        return description != null ? description : "";
+    }
+    
+    /**
+     * Gets the icon slot of a condition code.
+     * 
+     * @param code the condition code
+     * @return icon slot, DEFAULT_ICON for an unknown code
+     */
+    public static int getIconSlot(int code) {
+        return isValid(code) ? ICON_SLOTS[code] : DEFAULT_ICON;
+    }
+    
+    /**
+     * Gets the resource path of the icon in a slot.
+     * 
+     * @param slot the icon slot
+     * @return path of the icon image
+     */
+    public static String getIconPath(int slot) {
+        return ICON_PATHS[slot];
+    }
+    
+    /**
+     * Gets the number of icon slots.
+     * 
+     * @return icon count
+     */
+    public static int getIconCount() {
+        return ICON_PATHS.length;
+    }
+    
+    /**
+     * Helper method to add a condition to the table.
+     * 
+     * @param code the condition code
+     * @param description description of the condition
+     * @param iconName name of the icon image without extension
+     */
+    private static void define(int code, String description,
+            String iconName) {
+        for (int slot = 0; slot < ICON_NAMES.length; slot++) {
+            if (ICON_NAMES[slot].equals(iconName)) {
+                DESCRIPTIONS[code] = description;
+                ICON_SLOTS[code] = (byte) slot;
+                return;
+            }
+        }
+        throw new IllegalArgumentException("No icon named " + iconName);
+    }
+    
+    /**
+     * Helper method to check that a code fits the table.
+     * 
+     * @param code the condition code
+     * @return true if the code is within the table
+     */
+    private static boolean isValid(int code) {
+        return code > 0 && code < MAX_CODE;
+    }
+}
@@ -4,41 +4,102 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.io.InputStream;
 import javax.imageio.ImageIO;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import javafx.embed.swing.SwingFXUtils;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javafx.scene.image.ImageView;
 
 /**
  * Class for creating a simple weather map. The WeatherMap class represents a 
- * graphical display of weather forecasts over a map. It utilizes the 
- * OpenWeatherAPI to fetch weather data for specified locations in Finland
+ * graphical display of weather forecasts over a map. It utilizes an
+ * AsyncWeatherAPI to fetch weather data for specified locations in Finland
  * an displays them on the map in a text format.
  * 
+ * The map is drawn in two layers. The base layer is the map image, loaded
+ * once and never drawn on. The forecasts of the shown day are drawn on a
+ * transparent overlay by a render thread of its own, so drawing never
+ * blocks the Swing event thread. An overlay is never changed once it is
+ * shown: a new city is drawn on a copy, which then replaces the shown
+ * overlay, and only the area of the city is repainted. The overlays of the
+ * last few days shown are kept, so switching back to one is only a swap.
+ * 
  * ChatGPT 4 was used in writing, debugging and commenting this class.
  * 
  * @author bpelmo
  */
 public class WeatherMap extends JPanel {
 
+    private static final String[] LOCATIONS = {"Helsinki", "Turku",
+        "Lappeenranta", "Tampere", "Jyväskylä", "Vaasa", "Joensuu",
+        "Kajaani", "Oulu", "Kuusamo", "Rovaniemi", "Inari", "Enontekiö",
+        "Sodankylä"};
+
+    // Default number of cities loaded at the same time
+    private static final int DEFAULT_CONCURRENCY = 8;
+
+    // Number of day overlays kept for switching back to them
+    private static final int MAX_CACHED_DAYS = 4;
+
+    private static final int ICON_SIZE = 75;
+
+    private static final Font FONT = new Font("Arial", Font.BOLD, 12);
+
     private BufferedImage mapImage;
-    private Map<String, Forecast> locationForecasts;
-    private OpenWeatherAPI weatherAPI;
-    private WeatherApp weatherApp;
+    private final Map<String, Forecast> locationForecasts =
+            new ConcurrentHashMap<>();
+    // Overlays of the recently shown days, used on the render thread only
+    private final Map<Integer, Overlay> dayOverlays =
+            new LinkedHashMap<Integer, Overlay>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<Integer, Overlay> eldest) {
+            return size() > MAX_CACHED_DAYS;
+        }
+    };
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "weather-map-renderer");
+                thread.setDaemon(true);
+                return thread;
+            });
+    // Overlay on screen, used on the Swing event thread only
+    private Overlay overlay;
+    private volatile int day;
+    private AsyncWeatherAPI weatherAPI;
+    private final UiContext uiContext;
+    private final int concurrency;
 
     /**
      * Builder. Constructs a new WeatherMap object that 
      * initializes the map image
-     * and fetches the weather data.
+     * and starts fetching the weather data in the background.
      * 
      * @param weatherAPI 
+     * @param uiContext shared resources of the views
      */
-    public WeatherMap(OpenWeatherAPI weatherAPI) {
+    public WeatherMap(AsyncWeatherAPI weatherAPI, UiContext uiContext) {
+        this(weatherAPI, uiContext, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * Builder. Constructs a new WeatherMap object that loads at most the
+     * given number of cities at the same time.
+     * 
+     * @param weatherAPI 
+     * @param uiContext shared resources of the views
+     * @param concurrency maximum number of cities loaded at the same time
+     */
+    public WeatherMap(AsyncWeatherAPI weatherAPI, UiContext uiContext,
+            int concurrency) {
         this.weatherAPI = weatherAPI;
-        weatherApp = new WeatherApp();
-        locationForecasts = new HashMap<>();
+        this.uiContext = uiContext;
+        this.concurrency = concurrency;
         try {
             mapImage = ImageIO.read(getClass().getResource(
                     "/images/map_of_finland.png"));
@@ -50,22 +111,46 @@ public class WeatherMap extends JPanel {
 
     /**
      * Function for loading the forecast data for each point shown on
-     * the weather map.
+     * the weather map. The cities are loaded in parallel on a bounded
+     * pool of worker threads and the method returns immediately. Each
+     * city is drawn on the overlay as soon as its data arrives.
      */
     public void loadForecastData() {
-        String[] locations = {"Helsinki", "Turku", "Lappeenranta", "Tampere",
-                              "Jyväskylä", "Vaasa", "Joensuu",
-                              "Kajaani", "Oulu", "Kuusamo", "Rovaniemi",
-                              "Inari", "Enontekiö", "Sodankylä"};
-        
-        for (String location : locations) {
-            double[] coordinates = weatherAPI.lookUpLocation(location);
-            Forecast forecast = new Forecast(weatherAPI.
-                    getDailyForecast(coordinates));
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(concurrency, LOCATIONS.length), runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "weather-map-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        for (String location : LOCATIONS) {
+            executor.execute(() -> loadLocation(location));
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Fetches the forecast of a single location and draws it on the map.
+     * Runs on a worker thread.
+     * 
+     * @param location the name of the location
+     */
+    private void loadLocation(String location) {
+        try {
+            double[] coordinates = SearchExecutor.await(
+                    weatherAPI.lookUpLocation(location));
+            if (coordinates == null) {
+                return;
+            }
+            Forecast forecast = SearchExecutor.await(
+                    weatherAPI.getDailyForecast(coordinates));
             locationForecasts.put(location, forecast);
-            
-             drawText(location, getDrawXCoordinate(location),
-                     getDrawYCoordinate(location), 0);
+            renderer.execute(() -> addLocation(location));
+        } catch (Exception e) {
+            Logger.getLogger(WeatherMap.class.getName()).log(Level.WARNING,
+                    "Could not load the forecast of " + location, e);
         }
     }
 
@@ -80,87 +165,229 @@ public class WeatherMap extends JPanel {
         if (mapImage != null) {
             g.drawImage(mapImage, 0, 0, this);
         }
+        if (overlay != null) {
+            g.drawImage(overlay.image, 0, 0, this);
+        }
     }
+
     /**
-     * Converts a JavaFX Image to a BufferedImage. Used for
-     * integrating JavaFX images into Swing components.
+     * Shows the forecasts of another day. An overlay of the day rendered
+     * earlier is reused, otherwise the day is rendered on the render
+     * thread. Only the areas of the forecasts are repainted.
      * 
-     * @param image the JavaFX Image.
-     * @return BufferedImage equivalent
+     * @param n the index of the forecast entries to show, 0 for today
+     * @throws IllegalArgumentException if n is negative or past the
+     * forecasts
      */
-    private BufferedImage javafxImageToBufferedImage(javafx.scene
-            .image.Image image) {
-        BufferedImage bufferedImage = new BufferedImage((int) 
-                image.getWidth(), (int) image.getHeight(),
-                BufferedImage.TYPE_INT_ARGB);
-        SwingFXUtils.fromFXImage(image, bufferedImage);
-        return bufferedImage;
+    public void showDay(int n) {
+        int days = getForecastLength();
+        if (n < 0 || n >= days) {
+            throw new IllegalArgumentException("Day " + n
+                    + " is not within the " + days + "-day forecast");
+        }
+        day = n;
+        renderer.execute(() -> {
+            Overlay rendered = dayOverlays.get(n);
+            if (rendered == null) {
+                rendered = renderDay(n);
+                dayOverlays.put(n, rendered);
+            }
+            publish(rendered, n, null);
+        });
     }
-    
+
     /**
-     * Retrieves and resizes a weather icon based on the weather description.
-     * Loads an image from the resources, converts it to a BufferedImage,
-     * and resizes it to fit the display requirements on the map.
+     * Gets the number of days that can be shown: the length of the longest
+     * forecast loaded, or of the requested forecast while none is loaded.
      * 
-     * @param description weather description
-     * @param newWidth width for resized image
-     * @param newHeight height for resized image
-     * @return weather icon (or null if an error occurs)
+     * @return number of days
      */
-    private BufferedImage getWeatherImage(String description, 
-            int newWidth, int newHeight) {
-        String imagePath = "/images/" + description.toLowerCase() + ".png";
-        try (InputStream imageStream = getClass()
-                .getResourceAsStream(imagePath)) {
-            if (imageStream != null) {
-                javafx.scene.image.Image fxImage =
-                        new javafx.scene.image.Image(imageStream);
-                BufferedImage originalImage = 
-                        javafxImageToBufferedImage(fxImage);
+    public int getForecastLength() {
+        int days = 0;
+        for (Forecast forecast : locationForecasts.values()) {
+            days = Math.max(days, forecast.size());
+        }
+        return days > 0 ? days
+                : Integer.parseInt(OpenWeatherAPI.DAILY_COUNT);
+    }
 
-                BufferedImage resizedImage = new 
-        BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_ARGB);
-                Graphics2D g2d = resizedImage.createGraphics();
+    /**
+     * Gets the index of the day shown.
+     * 
+     * @return index of the forecast entries shown
+     */
+    public int getDay() {
+        return day;
+    }
+
+    /**
+     * A transparent image with the forecasts of one day, and the area
+     * they cover. An overlay is not changed after it has been published.
+     */
+    private static final class Overlay {
+        private final BufferedImage image;
+        private Rectangle bounds;
 
-                g2d.drawImage(originalImage, 0, 0, newWidth, newHeight, null);
-                g2d.dispose();
+        private Overlay(BufferedImage image) {
+            this.image = image;
+        }
+    }
 
-                return resizedImage;
-            } else {
+    /**
+     * Draws a new city on a copy of the overlay of the shown day and
+     * publishes the copy. The overlays of other days lack the city, so
+     * they are dropped and rendered again when shown. If the shown day has
+     * no overlay yet, e.g. because the day was just chosen and its render
+     * task has not run, the day is rendered with every city loaded so far,
+     * so the overlay left for that task is complete. Runs on the render
+     * thread.
+     * 
+     * @param location the name of the location
+     */
+    private void addLocation(String location) {
+        int shownDay = day;
+        Overlay current = dayOverlays.get(shownDay);
+        dayOverlays.clear();
+        if (current == null) {
+            Overlay rendered = renderDay(shownDay);
+            dayOverlays.put(shownDay, rendered);
+            publish(rendered, shownDay, null);
+            return;
+        }
+        BufferedImage image = newOverlayImage();
+        Overlay updated = new Overlay(image);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(current.image, 0, 0, null);
+        g.dispose();
+        updated.bounds = current.bounds;
+        Rectangle dirty = drawText(updated, location,
+                getDrawXCoordinate(location), getDrawYCoordinate(location),
+                shownDay);
+        dayOverlays.put(shownDay, updated);
+        publish(updated, shownDay, dirty);
+    }
+
+    /**
+     * Renders a new overlay with the forecasts of every city loaded so
+     * far. Runs on the render thread.
+     * 
+     * @param n the index of the forecast entries to draw
+     * @return the overlay
+     */
+    private Overlay renderDay(int n) {
+        Overlay rendered = new Overlay(newOverlayImage());
+        for (String location : locationForecasts.keySet()) {
+            drawText(rendered, location, getDrawXCoordinate(location),
+                    getDrawYCoordinate(location), n);
+        }
+        return rendered;
+    }
+
+    /**
+     * Replaces the shown overlay on the Swing event thread, unless another
+     * day has been chosen meanwhile, and repaints the changed area.
+     * 
+     * @param rendered the new overlay
+     * @param renderedDay the day of the overlay
+     * @param dirty the changed area, or null for everything either
+     * overlay covers
+     */
+    private void publish(Overlay rendered, int renderedDay, Rectangle dirty) {
+        SwingUtilities.invokeLater(() -> {
+            if (day != renderedDay) {
+                return;
             }
-        } catch (IOException e) {
-            return null;
+            Rectangle area = dirty;
+            if (area == null) {
+                area = union(overlay != null ? overlay.bounds : null,
+                        rendered.bounds);
+            }
+            overlay = rendered;
+            if (area != null) {
+                repaint(area);
+            }
+        });
+    }
+
+    /**
+     * Creates an empty overlay the size of the map.
+     * 
+     * @return transparent image
+     */
+    private BufferedImage newOverlayImage() {
+        return new BufferedImage(mapImage.getWidth(), mapImage.getHeight(),
+                BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Helper method to join two areas.
+     * 
+     * @param a an area, or null
+     * @param b an area, or null
+     * @return the smallest area covering both, or null if both are null
+     */
+    private static Rectangle union(Rectangle a, Rectangle b) {
+        if (a == null) {
+            return b;
         }
-        return null;
+        return b == null ? a : a.union(b);
+    }
+    /**
+     * Retrieves a weather icon based on the weather condition, resized to
+     * fit the display requirements on the map. The icon comes from the
+     * shared icons, so it is decoded and resized only once.
+     * 
+     * @param conditionCode weather condition code
+     * @param size width and height for resized image
+     * @return weather icon (or null if an error occurs)
+     */
+    private BufferedImage getWeatherImage(int conditionCode, int size) {
+        String imagePath = WeatherCondition.getIconPath(
+                WeatherCondition.getIconSlot(conditionCode));
+        return uiContext.getBufferedIcon(imagePath, size);
     }
 
      /**
-     * Draws the weather forecast text at a specified position on the map.
+     * Draws the weather forecast text at a specified position on an
+     * overlay and adds the area it covers to the overlay's bounds.
      *
+     * @param target the overlay to draw on, not yet published.
      * @param location the name of the location for which the forecast is drawn.
      * @param x the x-coordinate on the map where the text should be drawn.
      * @param y the y-coordinate on the map where the text should be drawn.
      * @param n the index of the forecast entry to be displayed.
+     * @return the area drawn on, or null if the location has no such entry
      */
-    public void drawText(String location, int x, int y, int n) {
-        Graphics g = mapImage.getGraphics();
-        g.setFont(new Font("Arial", Font.BOLD, 12));
-        g.setColor(Color.BLACK);
-
+    private Rectangle drawText(Overlay target, String location, int x, int y,
+            int n) {
         Forecast forecast = locationForecasts.get(location);
+        if (forecast == null || n >= forecast.size()) {
+            return null;
+        }
         Forecast.ForecastEntry entry = forecast.getNthEntry(n);
         String text = entry.getMinTemp()
                 + "C..." + entry.getMaxTemp() + "C"; 
 
+        Graphics2D g = target.image.createGraphics();
+        g.setFont(FONT);
+        g.setColor(Color.BLACK);
+        FontMetrics metrics = g.getFontMetrics();
+        Rectangle area = new Rectangle(x, y - metrics.getAscent(),
+                metrics.stringWidth(text),
+                metrics.getAscent() + metrics.getDescent());
+
         BufferedImage weatherIcon =
-                getWeatherImage(entry.getDescription(), 75, 75);
+                getWeatherImage(entry.getConditionCode(), ICON_SIZE);
         if (weatherIcon != null) {
-            g.drawImage(weatherIcon, x+2, y+2 - weatherIcon.getHeight(), null); 
-        } else {
+            int iconY = y + 2 - weatherIcon.getHeight();
+            g.drawImage(weatherIcon, x + 2, iconY, null);
+            area.add(new Rectangle(x + 2, iconY, weatherIcon.getWidth(),
+                    weatherIcon.getHeight()));
         }
         g.drawString(text, x, y);
         g.dispose();
-        repaint();
+        target.bounds = union(target.bounds, area);
+        return area;
     }
 
     /**
@@ -0,0 +1,94 @@
+package fi.tuni.prog3.weatherapp;
+
+/**
+ * Immutable bundle of all weather data of one location, fetched together:
+ * the coordinates, current weather, daily and hourly forecasts and the time
+ * they were fetched. A snapshot is never changed after it is created, so it
+ * can be shared between threads freely and readers always see data that
+ * belongs together.
+ * 
+ * @author bpelmo
+ */
+public final class WeatherSnapshot {
+    private final String location;
+    private final double[] coordinates;
+    private final CurrentWeather currentWeather;
+    private final Forecast forecast;
+    private final HourlyForecast hourlyForecast;
+    private final long fetchedAt;
+    
+    /**
+     * Builder. Constructs a snapshot of the given data.
+     * 
+     * @param location name of the location
+     * @param coordinates latitude and longitude
+     * @param currentWeather current weather
+     * @param forecast daily forecast
+     * @param hourlyForecast hourly forecast
+     * @param fetchedAt time the data was fetched in epoch milliseconds
+     */
+    public WeatherSnapshot(String location, double[] coordinates,
+            CurrentWeather currentWeather, Forecast forecast,
+            HourlyForecast hourlyForecast, long fetchedAt) {
+        this.location = location;
+        this.coordinates = coordinates.clone();
+        this.currentWeather = currentWeather;
+        this.forecast = forecast;
+        this.hourlyForecast = hourlyForecast;
+        this.fetchedAt = fetchedAt;
+    }
+    
+    /**
+     * Gets the name of the location.
+     * 
+     * @return location name
+     */
+    public String getLocation() {
+        return location;
+    }
+    
+    /**
+     * Gets the coordinates of the location.
+     * 
+     * @return a copy of the latitude and longitude
+     */
+    public double[] getCoordinates() {
+        return coordinates.clone();
+    }
+    
+    /**
+     * Gets the current weather.
+     * 
+     * @return current weather
+     */
+    public CurrentWeather getCurrentWeather() {
+        return currentWeather;
+    }
+    
+    /**
+     * Gets the daily forecast.
+     * 
+     * @return daily forecast
+     */
+    public Forecast getForecast() {
+        return forecast;
+    }
+    
+    /**
+     * Gets the hourly forecast.
+     * 
+     * @return hourly forecast
+     */
+    public HourlyForecast getHourlyForecast() {
+        return hourlyForecast;
+    }
+    
+    /**
+     * Gets the time the data was fetched.
+     * 
+     * @return time in epoch milliseconds
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+}
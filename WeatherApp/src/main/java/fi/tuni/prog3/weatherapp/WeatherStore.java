@@ -0,0 +1,57 @@
+package fi.tuni.prog3.weatherapp;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the WeatherSnapshot currently shown by the application. A new
+ * snapshot replaces the old one in a single atomic step, so readers never
+ * see parts of two different snapshots and writers, e.g. background
+ * refreshes, never have to take a lock.
+ * 
+ * @author bpelmo
+ */
+public class WeatherStore {
+    
+    private final AtomicReference<WeatherSnapshot> current =
+            new AtomicReference<>();
+    
+    /**
+     * Gets the current snapshot. Read it once and use the returned object
+     * for everything that has to be consistent.
+     * 
+     * @return the current snapshot, or null if there is none yet
+     */
+    public WeatherSnapshot get() {
+        return current.get();
+    }
+    
+    /**
+     * Replaces the current snapshot.
+     * 
+     * @param snapshot the new snapshot
+     */
+    public void publish(WeatherSnapshot snapshot) {
+        current.set(snapshot);
+    }
+    
+    /**
+     * Replaces the current snapshot unless it already holds data of the
+     * same location that was fetched later, e.g. when a refresh that was
+     * started earlier finishes last.
+     * 
+     * @param snapshot the new snapshot
+     * @return true if the snapshot was published
+     */
+    public boolean publishIfNewer(WeatherSnapshot snapshot) {
+        WeatherSnapshot previous;
+        do {
+            previous = current.get();
+            if (previous != null
+                    && previous.getLocation().equals(snapshot.getLocation())
+                    && previous.getFetchedAt() > snapshot.getFetchedAt()) {
+                return false;
+            }
+        } while (!current.compareAndSet(previous, snapshot));
+        return true;
+    }
+}
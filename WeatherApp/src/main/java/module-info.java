@@ -3,6 +3,7 @@ module fi.tuni.progthree.weatherapp {
     requires com.google.gson;
     requires org.json;
     requires java.logging; 
+    requires java.net.http;
     requires javafx.graphicsEmpty;
     requires java.desktop;
     requires javafx.swing;
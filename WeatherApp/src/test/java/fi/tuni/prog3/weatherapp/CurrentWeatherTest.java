@@ -0,0 +1,123 @@
+package fi.tuni.prog3.weatherapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the one-pass decoding of the current weather against the org.json
+ * parsing it replaced, which built the whole object tree and looked up
+ * "main", "wind" and "sys" again for every field, and compares the time
+ * both take.
+ *
+ * @author bpelmo
+ */
+class CurrentWeatherTest {
+
+    private static final int BENCHMARK_PARSES = 20000;
+
+    private byte[] json;
+
+    @BeforeEach
+    void readFixture() throws IOException {
+        json = Files.readAllBytes(Paths.get(FixtureServer.DEFAULT_DIRECTORY,
+                OpenWeatherAPI.CURRENT_ENDPOINT + ".json"));
+    }
+
+    @Test
+    void decodesTheFieldsTheTreeParseReads() {
+        JSONObject tree = new JSONObject(
+                new String(json, StandardCharsets.UTF_8));
+        CurrentWeather weather = new CurrentWeather(json);
+
+        assertEquals(tree.getJSONArray("weather").getJSONObject(0)
+                .getInt("id"), weather.getConditionCode());
+        assertEquals(tree.getJSONObject("main").getDouble("temp"),
+                weather.getTemperatureK());
+        assertEquals(tree.getJSONObject("main").getDouble("feels_like"),
+                weather.getFeelsLikeK());
+        assertEquals(tree.getJSONObject("main").getInt("humidity"),
+                weather.getHumidityPercent());
+        assertEquals(tree.getJSONObject("wind").getDouble("speed"),
+                weather.getWindSpeedMps());
+        assertEquals(tree.getJSONObject("wind").getInt("deg"),
+                weather.getWindDirectionDegrees());
+        assertEquals(tree.getJSONObject("sys").getLong("sunrise"),
+                weather.getSunriseEpochSecond());
+        assertEquals(tree.getJSONObject("sys").getLong("sunset"),
+                weather.getSunsetEpochSecond());
+        assertEquals(tree.getInt("timezone"),
+                weather.getZoneOffset().getTotalSeconds());
+    }
+
+    @Test
+    void malformedJsonFailsTheConstructor() {
+        assertThrows(JsonParseException.class,
+                () -> new CurrentWeather("{\"main\": {\"temp\": "));
+    }
+
+    @Test
+    void benchmarkOnePassAgainstTreeParse() {
+        String text = new String(json, StandardCharsets.UTF_8);
+        // Warm up both parsers before timing them
+        double sink = parseTrees(text) + parseOnePass();
+
+        long start = System.nanoTime();
+        sink += parseTrees(text);
+        long treeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        sink += parseOnePass();
+        long onePassNanos = System.nanoTime() - start;
+
+        double checksum = sink;
+        Logger.getLogger(CurrentWeatherTest.class.getName()).info(
+                () -> String.format("%d parses: org.json %d ms, one pass "
+                        + "%d ms (checksum %.0f)", BENCHMARK_PARSES,
+                        TimeUnit.NANOSECONDS.toMillis(treeNanos),
+                        TimeUnit.NANOSECONDS.toMillis(onePassNanos),
+                        checksum));
+    }
+
+    /**
+     * Helper method to parse the fixture the way CurrentWeather did before
+     * the one-pass decoding.
+     *
+     * @param text the JSON
+     * @return sum of the temperatures, so the work is not optimized away
+     */
+    private static double parseTrees(String text) {
+        double sum = 0;
+        for (int i = 0; i < BENCHMARK_PARSES; i++) {
+            JSONObject tree = new JSONObject(text);
+            tree.getJSONArray("weather").getJSONObject(0)
+                    .getString("description");
+            sum += tree.getJSONObject("main").getDouble("temp");
+            tree.getJSONObject("main").getDouble("feels_like");
+            tree.getJSONObject("main").getInt("humidity");
+            tree.getJSONObject("wind").getDouble("speed");
+            tree.getJSONObject("wind").getInt("deg");
+            tree.getJSONObject("sys").getLong("sunrise");
+            tree.getJSONObject("sys").getLong("sunset");
+            tree.getLong("timezone");
+        }
+        return sum;
+    }
+
+    private double parseOnePass() {
+        double sum = 0;
+        for (int i = 0; i < BENCHMARK_PARSES; i++) {
+            sum += new CurrentWeather(json).getTemperatureK();
+        }
+        return sum;
+    }
+}
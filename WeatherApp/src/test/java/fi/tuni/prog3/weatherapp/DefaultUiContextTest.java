@@ -0,0 +1,50 @@
+package fi.tuni.prog3.weatherapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the heap retained by the views before and after they shared one
+ * UiContext. Before it every ForecastBox, HourForecastBox and the
+ * WeatherMap built its own WeatherApp to reach the images.
+ *
+ * @author bpelmo
+ */
+class DefaultUiContextTest {
+
+    // 14 daily boxes, 24 hourly boxes and the map
+    private static final int VIEWS = 39;
+
+    // Sets of views measured, to even out the noise of a single reading
+    private static final int ROUNDS = 100;
+
+    @Test
+    void benchmarkRetainedHeapOfSharedContext() {
+        long before = WeatherApp.usedHeapAfterGc();
+        Object[] perView = new Object[ROUNDS * VIEWS];
+        for (int i = 0; i < perView.length; i++) {
+            perView[i] = new WeatherApp();
+        }
+        long perViewBytes = WeatherApp.usedHeapAfterGc() - before;
+
+        before = WeatherApp.usedHeapAfterGc();
+        Object[] shared = new Object[ROUNDS * VIEWS];
+        for (int round = 0; round < ROUNDS; round++) {
+            UiContext context = new DefaultUiContext(null, null);
+            for (int view = 0; view < VIEWS; view++) {
+                shared[round * VIEWS + view] = context;
+            }
+        }
+        long sharedBytes = WeatherApp.usedHeapAfterGc() - before;
+
+        Logger.getLogger(DefaultUiContextTest.class.getName()).info(
+                () -> String.format("Retained by the %d views: %d bytes "
+                        + "with an application each, %d bytes with a "
+                        + "shared context", VIEWS, perViewBytes / ROUNDS,
+                        sharedBytes / ROUNDS));
+        // Keeps both sets reachable until the last reading
+        assertEquals(perView.length, shared.length);
+    }
+}
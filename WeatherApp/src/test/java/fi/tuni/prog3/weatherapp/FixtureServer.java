@@ -0,0 +1,156 @@
+package fi.tuni.prog3.weatherapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Local stand-in for the OpenWeatherMap servers that answers every request
+ * with a recorded response from a directory. The file of an endpoint is
+ * named after its path with "/" replaced by "_", e.g. "forecast/daily" is
+ * served from forecast_daily.json. Query parameters are ignored, so every
+ * location gets the same weather.
+ *
+ * Running the application with -Dweatherapp.baseUrl=http://localhost:8089/
+ * sends all requests to the server, which makes both the separate endpoint
+ * requests and the One Call bundle usable offline. The number of requests
+ * per endpoint is counted and logged, so the two can be compared.
+ *
+ * The server is a development tool kept with the test sources, so neither
+ * it nor the recorded responses ship with the application.
+ *
+ * Usage: FixtureServer [directory] [port], by default
+ * "src/test/resources/fixtures" and 8089.
+ *
+ * @author bpelmo
+ */
+public class FixtureServer {
+
+    /**
+     * Directory of the recorded responses, relative to the project.
+     */
+    static final String DEFAULT_DIRECTORY =
+            "src/test/resources/fixtures";
+
+    private static final int DEFAULT_PORT = 8089;
+
+    private static final Logger LOGGER =
+            Logger.getLogger(FixtureServer.class.getName());
+
+    static {
+        // The server writes the headers and the body separately, and with
+        // Nagle's algorithm on every keep-alive response waits for a
+        // delayed ACK before the body leaves
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Path directory;
+    private final HttpServer server;
+    private final Map<String, AtomicLong> requestCounts =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Builder. Constructs a server for the fixtures in the given directory,
+     * listening on the loopback address. The server is not started yet.
+     *
+     * @param directory directory of the recorded responses
+     * @param port port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public FixtureServer(String directory, int port) throws IOException {
+        this.directory = Paths.get(directory);
+        this.server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Gets the address to set as the weatherapp.baseUrl system property.
+     *
+     * @return address of the server, ending with "/"
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Gets the number of requests made to an endpoint.
+     *
+     * @param endpoint endpoint path, e.g. "onecall"
+     * @return number of requests
+     */
+    public long getRequestCount(String endpoint) {
+        AtomicLong count = requestCounts.get(endpoint);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Helper method to answer a request with the file of its endpoint, or
+     * with 404 if there is none.
+     *
+     * @param exchange the request and its response
+     * @throws IOException if sending the response fails
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String endpoint = exchange.getRequestURI().getPath().substring(1);
+        long count = requestCounts.computeIfAbsent(endpoint,
+                key -> new AtomicLong()).incrementAndGet();
+        LOGGER.info(() -> endpoint + " request " + count);
+
+        Path file = directory.resolve(endpoint.replace('/', '_') + ".json");
+        try {
+            if (endpoint.contains("..") || !Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] body = Files.readAllBytes(file);
+            exchange.getResponseHeaders().set("Content-Type",
+                    "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Runs the server until the process is stopped.
+     *
+     * @param args optional directory and port
+     * @throws IOException if the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+        String directory = args.length > 0 ? args[0] : DEFAULT_DIRECTORY;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        FixtureServer server = new FixtureServer(directory, port);
+        server.start();
+        LOGGER.info(() -> "Serving " + directory + " at "
+                + server.getBaseUrl());
+    }
+}
@@ -0,0 +1,132 @@
+package fi.tuni.prog3.weatherapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares HttpTransport with the HttpURLConnection pattern the API used
+ * before it, which connected once for the response code and opened the URL
+ * a second time for the body.
+ *
+ * @author bpelmo
+ */
+class HttpTransportTest {
+
+    private static final String QUERY =
+            OpenWeatherAPI.CURRENT_ENDPOINT + "?lat=61.4981&lon=23.7608";
+
+    private static final int BENCHMARK_CALLS = 200;
+
+    private FixtureServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new FixtureServer(FixtureServer.DEFAULT_DIRECTORY, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    void connectionPatternMakesTwoRequestsPerCall() throws IOException {
+        String body = getWithUrlConnection(url());
+
+        assertEquals(2, requestCount());
+        assertEquals(getWithTransport(newTransport(), url()), body);
+    }
+
+    @Test
+    void transportMakesOneRequestPerCall() throws IOException {
+        getWithTransport(newTransport(), url());
+
+        assertEquals(1, requestCount());
+    }
+
+    @Test
+    void benchmarkTransportAgainstConnectionPattern() throws IOException {
+        HttpTransport transport = newTransport();
+        String url = url();
+        // Warm up both clients before timing them
+        getWithUrlConnection(url);
+        getWithTransport(transport, url);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            getWithUrlConnection(url);
+        }
+        long connectionNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            getWithTransport(transport, url);
+        }
+        long transportNanos = System.nanoTime() - start;
+
+        Logger.getLogger(HttpTransportTest.class.getName()).info(
+                () -> String.format("%d calls: HttpURLConnection %d ms, "
+                        + "HttpTransport %d ms", BENCHMARK_CALLS,
+                        TimeUnit.NANOSECONDS.toMillis(connectionNanos),
+                        TimeUnit.NANOSECONDS.toMillis(transportNanos)));
+        assertEquals(3L * (BENCHMARK_CALLS + 1), requestCount());
+    }
+
+    /**
+     * Helper method to fetch a body the way OpenWeatherAPI did before
+     * HttpTransport.
+     *
+     * @param address URL fetched
+     * @return the response body
+     * @throws IOException if the request fails
+     */
+    private static String getWithUrlConnection(String address)
+            throws IOException {
+        URL url = new URL(address);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("GET");
+        conn.connect();
+        assertEquals(200, conn.getResponseCode());
+        StringBuilder inline = new StringBuilder();
+        try (Scanner sc = new Scanner(url.openStream())) {
+            while (sc.hasNext()) {
+                inline.append(sc.nextLine());
+            }
+        }
+        conn.disconnect();
+        return inline.toString();
+    }
+
+    private static String getWithTransport(HttpTransport transport,
+            String address) throws IOException {
+        HttpResponse<String> response = transport.get(URI.create(address));
+        assertEquals(200, response.statusCode());
+        return response.body().replace("\n", "").replace("\r", "");
+    }
+
+    private static HttpTransport newTransport() {
+        return new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(10),
+                new RateLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE,
+                        new CircuitBreaker(5, 30, TimeUnit.SECONDS)));
+    }
+
+    private String url() {
+        return server.getBaseUrl() + QUERY;
+    }
+
+    private long requestCount() {
+        return server.getRequestCount(OpenWeatherAPI.CURRENT_ENDPOINT);
+    }
+}
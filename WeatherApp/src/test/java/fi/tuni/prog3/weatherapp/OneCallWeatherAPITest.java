@@ -0,0 +1,241 @@
+package fi.tuni.prog3.weatherapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs the One Call bundle mode and the separate endpoint requests against
+ * a FixtureServer and compares them: the number of requests a search makes,
+ * the models both produce and the time a search takes.
+ *
+ * @author bpelmo
+ */
+class OneCallWeatherAPITest {
+
+    private static final double[] COORDINATES = {61.4981, 23.7608};
+
+    private static final int BENCHMARK_SEARCHES = 50;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private FixtureServer server;
+    private ExecutorService parseExecutor;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new FixtureServer(FixtureServer.DEFAULT_DIRECTORY, 0);
+        server.start();
+        System.setProperty(OpenWeatherAPI.BASE_URL_PROPERTY,
+                server.getBaseUrl());
+        parseExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void stopServer() {
+        System.clearProperty(OpenWeatherAPI.BASE_URL_PROPERTY);
+        server.stop();
+        parseExecutor.shutdown();
+    }
+
+    @Test
+    void bundleModeMakesOneRequestPerSearch() {
+        search(oneCall(), COORDINATES);
+
+        assertEquals(1, server.getRequestCount(
+                OpenWeatherAPI.ONECALL_ENDPOINT));
+        assertEquals(0, separateRequestCount());
+    }
+
+    @Test
+    void separateModeMakesThreeRequestsPerSearch() {
+        search(separate(), COORDINATES);
+
+        assertEquals(3, separateRequestCount());
+        assertEquals(0, server.getRequestCount(
+                OpenWeatherAPI.ONECALL_ENDPOINT));
+    }
+
+    @Test
+    void bothModesProduceTheSameModels() {
+        Search bundled = search(oneCall(), COORDINATES);
+        Search separated = search(separate(), COORDINATES);
+
+        assertSameWeather(separated, bundled);
+    }
+
+    @Test
+    void bundleParsesIntoTheModelsOfTheSeparateFixtures()
+            throws IOException {
+        WeatherBundle bundle;
+        try (Reader reader = fixture(OpenWeatherAPI.ONECALL_ENDPOINT)) {
+            bundle = WeatherBundle.parse(reader);
+        }
+        Search separated = new Search(
+                new CurrentWeather(Files.readAllBytes(fixturePath(
+                        OpenWeatherAPI.CURRENT_ENDPOINT))),
+                new Forecast(fixture(OpenWeatherAPI.DAILY_ENDPOINT)),
+                new HourlyForecast(fixture(OpenWeatherAPI.HOURLY_ENDPOINT)));
+
+        assertSameWeather(separated, new Search(bundle.getCurrentWeather(),
+                bundle.getForecast(), bundle.getHourlyForecast()));
+    }
+
+    @Test
+    void benchmarkBundleAgainstSeparateRequests() {
+        AsyncWeatherAPI bundled = oneCall();
+        AsyncWeatherAPI separated = separate();
+        // Warm up the connections and the parsers of both modes
+        benchmark(bundled, 0);
+        benchmark(separated, 0);
+
+        long bundledNanos = benchmark(bundled, 1);
+        long separatedNanos = benchmark(separated, 1);
+
+        Logger.getLogger(OneCallWeatherAPITest.class.getName()).info(
+                () -> String.format("%d searches: One Call %d ms, "
+                        + "separate requests %d ms", BENCHMARK_SEARCHES,
+                        TimeUnit.NANOSECONDS.toMillis(bundledNanos),
+                        TimeUnit.NANOSECONDS.toMillis(separatedNanos)));
+        assertEquals(2L * BENCHMARK_SEARCHES, server.getRequestCount(
+                OpenWeatherAPI.ONECALL_ENDPOINT));
+        assertEquals(3L * 2 * BENCHMARK_SEARCHES,
+                separateRequestCount());
+    }
+
+    /**
+     * The three models of one search.
+     */
+    private static final class Search {
+        private final CurrentWeather current;
+        private final Forecast daily;
+        private final HourlyForecast hourly;
+
+        private Search(CurrentWeather current, Forecast daily,
+                HourlyForecast hourly) {
+            this.current = current;
+            this.daily = daily;
+            this.hourly = hourly;
+        }
+    }
+
+    /**
+     * Helper method to time searches of distinct locations, so that no
+     * search is answered from a cache.
+     *
+     * @param api the API searched
+     * @param round number of the round, keeping the locations apart
+     * @return time the searches took in nanoseconds
+     */
+    private long benchmark(AsyncWeatherAPI api, int round) {
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_SEARCHES; i++) {
+            search(api, new double[]{COORDINATES[0] + round,
+                COORDINATES[1] + i * 0.1});
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Helper method to fetch the weather of a location the way a search
+     * does, all three models at once.
+     *
+     * @param api the API searched
+     * @param coordinates latitude and longitude
+     * @return the models
+     */
+    private static Search search(AsyncWeatherAPI api, double[] coordinates) {
+        CompletableFuture<CurrentWeather> current =
+                api.getCurrentWeather(coordinates);
+        CompletableFuture<Forecast> daily = api.getDailyForecast(coordinates);
+        CompletableFuture<HourlyForecast> hourly =
+                api.getHourlyForecast(coordinates);
+        return new Search(current.join(), daily.join(), hourly.join());
+    }
+
+    private static void assertSameWeather(Search expected, Search actual) {
+        CurrentWeather a = expected.current;
+        CurrentWeather b = actual.current;
+        assertEquals(a.getConditionCode(), b.getConditionCode());
+        assertEquals(a.getTemperatureK(), b.getTemperatureK());
+        assertEquals(a.getFeelsLikeK(), b.getFeelsLikeK());
+        assertEquals(a.getHumidityPercent(), b.getHumidityPercent());
+        assertEquals(a.getWindSpeedMps(), b.getWindSpeedMps());
+        assertEquals(a.getWindDirectionDegrees(),
+                b.getWindDirectionDegrees());
+        assertEquals(a.getSunriseEpochSecond(), b.getSunriseEpochSecond());
+        assertEquals(a.getSunsetEpochSecond(), b.getSunsetEpochSecond());
+        assertEquals(a.getZoneOffset(), b.getZoneOffset());
+
+        assertEquals(expected.daily.size(), actual.daily.size());
+        for (int i = 0; i < expected.daily.size(); i++) {
+            assertTrue(expected.daily.getNthEntry(i).sameAs(
+                    actual.daily.getNthEntry(i)), "day " + i);
+        }
+        assertEquals(expected.hourly.size(), actual.hourly.size());
+        for (int i = 0; i < expected.hourly.size(); i++) {
+            assertTrue(expected.hourly.getNthEntry(i).sameAs(
+                    actual.hourly.getNthEntry(i)), "hour " + i);
+        }
+    }
+
+    private long separateRequestCount() {
+        return server.getRequestCount(OpenWeatherAPI.CURRENT_ENDPOINT)
+                + server.getRequestCount(OpenWeatherAPI.DAILY_ENDPOINT)
+                + server.getRequestCount(OpenWeatherAPI.HOURLY_ENDPOINT);
+    }
+
+    private AsyncWeatherAPI oneCall() {
+        return new OneCallWeatherAPI(newTransport(), parseExecutor,
+                newGeocodingCache());
+    }
+
+    private AsyncWeatherAPI separate() {
+        return new AsyncOpenWeatherAPI(newTransport(), parseExecutor,
+                newGeocodingCache());
+    }
+
+    /**
+     * Helper method to create a transport whose budgets the tests cannot
+     * run out of.
+     *
+     * @return the transport
+     */
+    private static HttpTransport newTransport() {
+        return new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(10),
+                new RateLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE,
+                        new CircuitBreaker(5, 30, TimeUnit.SECONDS)));
+    }
+
+    private GeocodingCache newGeocodingCache() {
+        return new GeocodingCache(temporaryDirectory.resolve("geocoding.txt")
+                .toString());
+    }
+
+    private static Path fixturePath(String endpoint) {
+        return Paths.get(FixtureServer.DEFAULT_DIRECTORY,
+                endpoint.replace('/', '_') + ".json");
+    }
+
+    private static Reader fixture(String endpoint) throws IOException {
+        return Files.newBufferedReader(fixturePath(endpoint),
+                StandardCharsets.UTF_8);
+    }
+}